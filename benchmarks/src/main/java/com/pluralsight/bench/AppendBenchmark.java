@@ -0,0 +1,157 @@
+package com.pluralsight.bench;
+
+import com.pluralsight.Journal;
+import com.pluralsight.Ledger;
+import com.pluralsight.Money;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Rows appended per second, one at a time (a menu deposit or payment) and in batches of
+ * BATCH rows (an import batch through Ledger.appendAll).
+ *
+ * With fsync=none only the in-memory ledger is measured. Any other value is a journal fsync
+ * policy ("always", "interval:100", "records:1000") and every append also goes through the
+ * journal: a single append waits for its own commit like saveLine, a batch hands over all
+ * its lines and waits once for the last, like the importer.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AppendBenchmark {
+    private static final int BATCH = 1024;
+    // Generated rows are in date order; when they run out the ledger is replaced rather than
+    // starting over with older dates, so every append stays an in-order append.
+    private static final int ROWS = 256 * BATCH;
+
+    @Param({"1000"})
+    public int vendors;
+
+    @Param({"1.0"})
+    public double skew;
+
+    @Param({"none", "always"})
+    public String fsync;
+
+    private LocalDate[] dates;
+    private LocalTime[] times;
+    private String[] descriptions;
+    private String[] vendorNames;
+    private long[] amounts;
+    private String[] lines;
+    private Ledger[] batches;
+
+    private Ledger ledger;
+    private Journal journal;
+    private Path journalFile;
+    private int next;
+    private int nextBatch;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        dates = new LocalDate[ROWS];
+        times = new LocalTime[ROWS];
+        descriptions = new String[ROWS];
+        vendorNames = new String[ROWS];
+        amounts = new long[ROWS];
+        lines = new String[ROWS];
+        LedgerGenerator generator = new LedgerGenerator(ROWS, vendors, skew, 42);
+        LedgerGenerator.Row row = new LedgerGenerator.Row();
+        StringBuilder line = new StringBuilder(96);
+        for (int i = 0; i < ROWS; i++) {
+            generator.next(row);
+            dates[i] = row.date();
+            times[i] = row.time();
+            descriptions[i] = row.description;
+            vendorNames[i] = row.vendor;
+            amounts[i] = row.amountCents;
+            line.setLength(0);
+            line.append(dates[i]).append('|').append(times[i]).append('|').append(descriptions[i])
+                    .append('|').append(vendorNames[i]).append('|');
+            lines[i] = Money.append(line, amounts[i]).toString();
+        }
+        batches = new Ledger[ROWS / BATCH];
+        for (int b = 0; b < batches.length; b++) {
+            batches[b] = new Ledger();
+            for (int i = b * BATCH; i < (b + 1) * BATCH; i++) {
+                batches[b].append(dates[i], times[i], descriptions[i], vendorNames[i], amounts[i]);
+            }
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void open() throws IOException {
+        ledger = new Ledger();
+        next = 0;
+        nextBatch = 0;
+        if (!fsync.equals("none")) {
+            journalFile = Files.createTempFile("ledger-bench", ".journal");
+            journal = Journal.open(journalFile, Journal.FsyncPolicy.parse(fsync), 1);
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void close() throws IOException {
+        if (journal != null) {
+            journal.close();
+            journal = null;
+            Files.deleteIfExists(journalFile);
+        }
+    }
+
+    @Benchmark
+    public int singleAppend() {
+        int i = next;
+        next = (i + 1) % ROWS;
+        if (i == 0) {
+            ledger = new Ledger();
+        }
+        int row = ledger.append(dates[i], times[i], descriptions[i], vendorNames[i], amounts[i]);
+        if (journal != null) {
+            journal.append(lines[i]).join();
+        }
+        return row;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int batchedAppend() {
+        int b = nextBatch;
+        nextBatch = (b + 1) % batches.length;
+        if (b == 0) {
+            ledger = new Ledger();
+        }
+        ledger.appendAll(batches[b]);
+        if (journal != null) {
+            CompletableFuture<Long> last = null;
+            for (int i = b * BATCH; i < (b + 1) * BATCH; i++) {
+                last = journal.append(lines[i]);
+            }
+            last.join();
+        }
+        return ledger.size();
+    }
+}
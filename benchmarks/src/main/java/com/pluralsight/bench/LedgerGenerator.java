@@ -0,0 +1,173 @@
+package com.pluralsight.bench;
+
+import com.pluralsight.Ledger;
+import com.pluralsight.Money;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Random;
+
+/*
+ * Synthetic ledgers for the benchmarks, from a thousand rows up to tens of millions.
+ *
+ * Rows are in date and time order, spread evenly over DAYS days, like a ledger that has only
+ * ever been appended to. Vendors follow a Zipf distribution: vendor k (k = 1..vendors) is
+ * picked with weight 1 / k^skew, so skew 0 is uniform and skew 1 or more puts most rows on a
+ * handful of vendors, which is what real bank data looks like. Vendor "Vendor 1" is always
+ * the most common one. About one row in five is a deposit; the rest are payments.
+ *
+ * The same seed always gives the same rows, so runs are comparable.
+ *
+ * Usage: java -cp benchmarks.jar com.pluralsight.bench.LedgerGenerator file rows [vendors] [skew]
+ */
+public class LedgerGenerator {
+    public static final LocalDate FIRST_DAY = LocalDate.of(2015, 1, 1);
+    public static final int DAYS = 3650;
+    private static final int DESCRIPTIONS = 64;
+
+    private final int rows;
+    private final double[] cumulative;
+    private final String[] vendorNames;
+    private final String[] descriptions;
+    private final Random random;
+    private int next;
+
+    public LedgerGenerator(int rows, int vendors, double skew, long seed) {
+        this.rows = rows;
+        this.random = new Random(seed);
+        cumulative = new double[vendors];
+        vendorNames = new String[vendors];
+        double total = 0;
+        for (int k = 0; k < vendors; k++) {
+            total += 1 / Math.pow(k + 1, skew);
+            cumulative[k] = total;
+            vendorNames[k] = vendorName(k + 1);
+        }
+        for (int k = 0; k < vendors; k++) {
+            cumulative[k] /= total;
+        }
+        descriptions = new String[DESCRIPTIONS];
+        for (int i = 0; i < DESCRIPTIONS; i++) {
+            descriptions[i] = description(i);
+        }
+    }
+
+    public static String vendorName(int rank) {
+        return "Vendor " + rank;
+    }
+
+    public static String description(int index) {
+        return "Purchase " + index;
+    }
+
+    /* ------------------------------------------------------------------
+       Rows
+       ------------------------------------------------------------------ */
+    // One generated row; the fields are overwritten by every call to next().
+    public static final class Row {
+        public int epochDay;
+        public int secondOfDay;
+        public String description;
+        public String vendor;
+        public long amountCents;
+
+        public LocalDate date() {
+            return LocalDate.ofEpochDay(epochDay);
+        }
+
+        public LocalTime time() {
+            return LocalTime.ofSecondOfDay(secondOfDay);
+        }
+    }
+
+    public boolean hasNext() {
+        return next < rows;
+    }
+
+    //NEXT-Fills row with the next generated transaction.
+    public void next(Row row) {
+        // Position within the whole span, so timestamps never go backwards.
+        long second = (long) next * DAYS * 86_400 / rows;
+        row.epochDay = (int) (FIRST_DAY.toEpochDay() + second / 86_400);
+        row.secondOfDay = (int) (second % 86_400);
+        row.description = descriptions[random.nextInt(DESCRIPTIONS)];
+        row.vendor = vendorNames[pickVendor()];
+        long cents = 100 + random.nextInt(50_000);
+        row.amountCents = random.nextInt(5) == 0 ? cents * 10 : -cents;
+        next++;
+    }
+
+    private int pickVendor() {
+        double u = random.nextDouble();
+        int low = 0;
+        int high = cumulative.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (cumulative[mid] < u) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /* ------------------------------------------------------------------
+       Targets
+       ------------------------------------------------------------------ */
+    //FILL-Appends every remaining row to the ledger.
+    public Ledger fill(Ledger ledger) {
+        Row row = new Row();
+        while (hasNext()) {
+            next(row);
+            ledger.append(row.date(), row.time(), row.description, row.vendor, row.amountCents);
+        }
+        return ledger;
+    }
+
+    //WRITE-Writes every remaining row as a "date|time|description|vendor|amount" line, the tracker's file format.
+    public void write(Path file) throws IOException {
+        Row row = new Row();
+        StringBuilder line = new StringBuilder(96);
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            while (hasNext()) {
+                next(row);
+                line.setLength(0);
+                line.append(row.date()).append('|');
+                appendTime(line, row.secondOfDay);
+                line.append('|').append(row.description).append('|').append(row.vendor).append('|');
+                Money.append(line, row.amountCents).append('\n');
+                writer.append(line);
+            }
+        }
+    }
+
+    private static void appendTime(StringBuilder line, int secondOfDay) {
+        appendTwoDigits(line, secondOfDay / 3600).append(':');
+        appendTwoDigits(line, secondOfDay / 60 % 60).append(':');
+        appendTwoDigits(line, secondOfDay % 60);
+    }
+
+    private static StringBuilder appendTwoDigits(StringBuilder line, int value) {
+        return line.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: LedgerGenerator file rows [vendors] [skew]");
+            System.exit(2);
+        }
+        int rows = Integer.parseInt(args[1]);
+        int vendors = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        double skew = args.length > 3 ? Double.parseDouble(args[3]) : 1.0;
+        long start = System.nanoTime();
+        new LedgerGenerator(rows, vendors, skew, 42).write(Paths.get(args[0]));
+        System.out.printf("Wrote %d rows to %s in %.1f s%n", rows, args[0], (System.nanoTime() - start) / 1e9);
+    }
+}
@@ -0,0 +1,156 @@
+package com.pluralsight.bench;
+
+import com.pluralsight.LedgerServer;
+import com.pluralsight.Money;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Load generator for the HTTP/JSON API (FinancialTracker --serve <port>).
+ *
+ * Opens `readers` concurrent clients that loop over the query endpoints (a page of the
+ * ledger, a month by date, a vendor, a custom search, deposits) and `writers` clients that
+ * keep POSTing new transactions, all for the given number of seconds. Every client runs on
+ * a virtual thread when the JVM has them, otherwise on a platform thread.
+ *
+ * Prints requests per second, latency percentiles and errors for reads and writes, and exits
+ * with status 1 if any request failed.
+ *
+ * Usage: java -cp benchmarks.jar com.pluralsight.bench.LedgerLoadTest [baseUrl] [readers] [writers] [seconds]
+ * Note that every POST is a real transaction in the served ledger file.
+ */
+public class LedgerLoadTest {
+    private static final String[] VENDORS = {"Amazon", "Walmart", "Target", "Costco", "Joe"};
+
+    // Latencies of one client; merged once the run is over.
+    private static final class Recorder {
+        long[] nanos = new long[1024];
+        int count;
+        int errors;
+
+        void add(long elapsed) {
+            if (count == nanos.length) {
+                nanos = Arrays.copyOf(nanos, count * 2);
+            }
+            nanos[count++] = elapsed;
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        String baseUrl = args.length > 0 ? args[0] : "http://localhost:8080";
+        int readers = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int writers = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+
+        ExecutorService virtual = LedgerServer.newVirtualThreadExecutor();
+        ExecutorService clients = virtual != null ? virtual : Executors.newFixedThreadPool(readers + writers);
+        HttpClient http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+
+        System.out.printf("%d readers, %d writers, %d s against %s (%s)%n", readers, writers, seconds, baseUrl,
+                virtual != null ? "virtual threads" : "platform threads");
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        CountDownLatch done = new CountDownLatch(readers + writers);
+        List<Recorder> reads = new ArrayList<>();
+        List<Recorder> writes = new ArrayList<>();
+        for (int i = 0; i < readers + writers; i++) {
+            boolean writer = i >= readers;
+            Recorder recorder = new Recorder();
+            (writer ? writes : reads).add(recorder);
+            clients.execute(() -> {
+                try {
+                    while (System.nanoTime() < deadline) {
+                        HttpRequest request = writer ? writeRequest(baseUrl) : readRequest(baseUrl);
+                        long start = System.nanoTime();
+                        try {
+                            HttpResponse<Void> response = http.send(request, HttpResponse.BodyHandlers.discarding());
+                            if (response.statusCode() >= 300) {
+                                recorder.errors++;
+                            }
+                        } catch (Exception e) {
+                            recorder.errors++;
+                        }
+                        recorder.add(System.nanoTime() - start);
+                    }
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        clients.shutdown();
+
+        System.out.println("Kind     Requests     Req/s       p50 ms    p99 ms    max ms    Errors");
+        boolean failed = report("reads", reads, seconds);
+        failed |= report("writes", writes, seconds);
+        System.exit(failed ? 1 : 0);
+    }
+
+    private static HttpRequest readRequest(String baseUrl) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        LocalDate month = LocalDate.now().minusMonths(random.nextInt(24)).withDayOfMonth(1);
+        String vendor = VENDORS[random.nextInt(VENDORS.length)];
+        String path = switch (random.nextInt(5)) {
+            case 0 -> "/transactions?limit=100";
+            case 1 -> "/range?start=" + month + "&end=" + month.plusMonths(1).minusDays(1) + "&limit=100";
+            case 2 -> "/vendor?name=" + vendor + "&limit=100";
+            case 3 -> "/search?vendor=" + vendor + "&min=-100&max=0&limit=100";
+            default -> "/deposits?limit=100";
+        };
+        return HttpRequest.newBuilder(URI.create(baseUrl + path)).timeout(Duration.ofSeconds(30)).GET().build();
+    }
+
+    private static HttpRequest writeRequest(String baseUrl) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String body = "{\"date\":\"" + LocalDate.now() + "\",\"time\":\"12:00:00\",\"description\":\"Load test\","
+                + "\"vendor\":\"" + VENDORS[random.nextInt(VENDORS.length)] + "\",\"amount\":"
+                + Money.format(-(100 + random.nextInt(10_000))) + "}";
+        return HttpRequest.newBuilder(URI.create(baseUrl + "/transactions"))
+                .timeout(Duration.ofSeconds(30))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    // Prints one line and returns whether any request failed.
+    private static boolean report(String kind, List<Recorder> recorders, int seconds) {
+        int total = 0;
+        int errors = 0;
+        for (Recorder recorder : recorders) {
+            total += recorder.count;
+            errors += recorder.errors;
+        }
+        long[] all = new long[total];
+        int offset = 0;
+        for (Recorder recorder : recorders) {
+            System.arraycopy(recorder.nanos, 0, all, offset, recorder.count);
+            offset += recorder.count;
+        }
+        Arrays.sort(all);
+        System.out.printf("%-8s %-12d %-11.0f %-9.2f %-9.2f %-9.2f %d%n", kind, total, total / (double) seconds,
+                percentile(all, 0.50), percentile(all, 0.99), total == 0 ? 0 : all[total - 1] / 1e6, errors);
+        return errors > 0;
+    }
+
+    private static double percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[(int) Math.min(sorted.length - 1, (long) (fraction * sorted.length))] / 1e6;
+    }
+}
@@ -0,0 +1,34 @@
+package com.pluralsight.bench;
+
+import com.pluralsight.Ledger;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/*
+ * A generated ledger shared by the query and render benchmarks. Built once per trial, so the
+ * cost of generating tens of millions of rows is paid once per parameter combination.
+ *
+ * Sizes and skew are JMH parameters; override them on the command line, e.g.
+ *   -p rows=50000000 -p vendors=10000 -p skew=1.2
+ */
+@State(Scope.Benchmark)
+public class LedgerState {
+    @Param({"1000", "100000", "1000000"})
+    public int rows;
+
+    @Param({"1000"})
+    public int vendors;
+
+    @Param({"1.0"})
+    public double skew;
+
+    public Ledger ledger;
+
+    @Setup(Level.Trial)
+    public void build() {
+        ledger = new LedgerGenerator(rows, vendors, skew, 42).fill(new Ledger());
+    }
+}
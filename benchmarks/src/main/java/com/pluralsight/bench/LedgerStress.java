@@ -0,0 +1,175 @@
+package com.pluralsight.bench;
+
+import com.pluralsight.Ledger;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Stress run for the concurrent Ledger: N writer threads append while N reader threads query,
+ * for N = 1, 2, 4 ... up to the number of cores.
+ *
+ * Every row encodes who wrote it: the amount is writer * 1_000_000_000 + sequence, and the
+ * vendor, description, date and time are all derived from those two numbers. Readers check
+ * random visible rows and date ranges while the writers run, so a torn or half-published row
+ * shows up as a mismatch. After the writers finish, every writer's sequence must be present
+ * exactly once and the indexes and totals must agree with the row count.
+ *
+ * Usage: java -cp benchmarks.jar com.pluralsight.bench.LedgerStress [rowsPerWriter] [maxThreads]
+ */
+public class LedgerStress {
+    private static final long WRITER_STRIDE = 1_000_000_000L;
+    private static final LocalDate FIRST_DAY = LocalDate.of(2020, 1, 1);
+
+    public static void main(String[] args) throws InterruptedException {
+        int rowsPerWriter = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+        System.out.println("Threads  Rows        Appends/s     Reads/s        Errors");
+        boolean failed = false;
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            failed |= !run(threads, rowsPerWriter);
+        }
+        if (failed) {
+            System.exit(1);
+        }
+    }
+
+    private static boolean run(int threads, int rowsPerWriter) throws InterruptedException {
+        Ledger ledger = new Ledger();
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicLong reads = new AtomicLong();
+        AtomicLong errors = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+
+        List<Thread> writers = new ArrayList<>();
+        for (int w = 0; w < threads; w++) {
+            int writer = w;
+            writers.add(new Thread(() -> {
+                await(start);
+                for (int sequence = 0; sequence < rowsPerWriter; sequence++) {
+                    ledger.append(dateOf(sequence), timeOf(sequence), descriptionOf(sequence), vendorOf(writer),
+                            writer * WRITER_STRIDE + sequence);
+                }
+            }, "stress-writer-" + w));
+        }
+        List<Thread> readers = new ArrayList<>();
+        for (int r = 0; r < threads; r++) {
+            readers.add(new Thread(() -> {
+                await(start);
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (writing.get()) {
+                    int size = ledger.size();
+                    if (size == 0) {
+                        continue;
+                    }
+                    for (int i = 0; i < 64; i++) {
+                        if (!rowIsWhole(ledger, random.nextInt(size))) {
+                            errors.incrementAndGet();
+                        }
+                    }
+                    int firstDay = (int) FIRST_DAY.toEpochDay();
+                    int day = firstDay + random.nextInt(1 + ledger.getEpochDay(size - 1) - firstDay);
+                    for (int row : ledger.getDateIndex().range(day, day, size)) {
+                        if (row >= size || ledger.getEpochDay(row) != day) {
+                            errors.incrementAndGet();
+                        }
+                    }
+                    reads.addAndGet(65);
+                }
+            }, "stress-reader-" + r));
+        }
+
+        writers.forEach(Thread::start);
+        readers.forEach(Thread::start);
+        long startNanos = System.nanoTime();
+        start.countDown();
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        long elapsedNanos = System.nanoTime() - startNanos;
+        writing.set(false);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        errors.addAndGet(verify(ledger, threads, rowsPerWriter));
+        double seconds = elapsedNanos / 1e9;
+        long total = (long) threads * rowsPerWriter;
+        System.out.printf("%-8d %-11d %-13.0f %-14.0f %d%n",
+                threads, total, total / seconds, reads.get() / seconds, errors.get());
+        return errors.get() == 0;
+    }
+
+    // Final check: no lost, duplicated or torn rows, and indexes and totals agree.
+    private static long verify(Ledger ledger, int threads, int rowsPerWriter) {
+        long errors = 0;
+        long total = (long) threads * rowsPerWriter;
+        if (ledger.size() != total) {
+            System.err.println("Expected " + total + " rows, found " + ledger.size());
+            errors++;
+        }
+        boolean[][] seen = new boolean[threads][rowsPerWriter];
+        for (int row = 0; row < ledger.size(); row++) {
+            long amount = ledger.getAmountCents(row);
+            int writer = (int) (amount / WRITER_STRIDE);
+            int sequence = (int) (amount % WRITER_STRIDE);
+            if (!rowIsWhole(ledger, row) || writer >= threads || sequence >= rowsPerWriter || seen[writer][sequence]) {
+                errors++;
+                continue;
+            }
+            seen[writer][sequence] = true;
+        }
+        for (int writer = 0; writer < threads; writer++) {
+            if (ledger.getVendorIndex().count(vendorOf(writer)) != rowsPerWriter) {
+                System.err.println("Vendor index is off for writer " + writer);
+                errors++;
+            }
+        }
+        if (ledger.getDateIndex().size() != total || ledger.getAggregates().overall().getCount() != total) {
+            System.err.println("Date index or totals do not match the row count");
+            errors++;
+        }
+        return errors;
+    }
+
+    private static boolean rowIsWhole(Ledger ledger, int row) {
+        long amount = ledger.getAmountCents(row);
+        int writer = (int) (amount / WRITER_STRIDE);
+        int sequence = (int) (amount % WRITER_STRIDE);
+        return ledger.getVendor(row).equals(vendorOf(writer))
+                && ledger.getDescription(row).equals(descriptionOf(sequence))
+                && ledger.getEpochDay(row) == dateOf(sequence).toEpochDay()
+                && ledger.getSecondOfDay(row) == timeOf(sequence).toSecondOfDay();
+    }
+
+    private static LocalDate dateOf(int sequence) {
+        return FIRST_DAY.plusDays(sequence / 1000);
+    }
+
+    private static LocalTime timeOf(int sequence) {
+        return LocalTime.ofSecondOfDay(sequence % 86_400);
+    }
+
+    private static String descriptionOf(int sequence) {
+        return "item " + (sequence % 100);
+    }
+
+    private static String vendorOf(int writer) {
+        return "vendor " + writer;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
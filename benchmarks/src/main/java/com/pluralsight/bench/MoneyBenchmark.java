@@ -0,0 +1,117 @@
+package com.pluralsight.bench;
+
+import com.pluralsight.Money;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Fixed-point cents against the old double path: parsing amount text, and summing a column
+ * of amounts. Each invocation covers the whole array, so scores are amounts per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MoneyBenchmark {
+    private static final int AMOUNTS = 4096;
+
+    @Param({"42"})
+    public long seed;
+
+    private String[] texts;
+    private long[] cents;
+    private double[] dollars;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(seed);
+        texts = new String[AMOUNTS];
+        cents = new long[AMOUNTS];
+        dollars = new double[AMOUNTS];
+        for (int i = 0; i < AMOUNTS; i++) {
+            long amount = (random.nextInt(200_000) - 100_000) * (random.nextBoolean() ? 1L : 37L);
+            cents[i] = amount;
+            dollars[i] = amount / 100.0;
+            texts[i] = Money.format(amount);
+        }
+    }
+
+    /* ------------------------------------------------------------------
+       Parsing
+       ------------------------------------------------------------------ */
+    @Benchmark
+    @OperationsPerInvocation(AMOUNTS)
+    public void parseCents(Blackhole blackhole) {
+        for (String text : texts) {
+            blackhole.consume(Money.parseCents(text));
+        }
+    }
+
+    // What the loader used to do: parse a double, then round to cents for storage.
+    @Benchmark
+    @OperationsPerInvocation(AMOUNTS)
+    public void parseDouble(Blackhole blackhole) {
+        for (String text : texts) {
+            blackhole.consume(Math.round(Double.parseDouble(text) * 100));
+        }
+    }
+
+    /* ------------------------------------------------------------------
+       Totals
+       ------------------------------------------------------------------ */
+    @Benchmark
+    @OperationsPerInvocation(AMOUNTS)
+    public long sumCents() {
+        long total = 0;
+        for (long amount : cents) {
+            total += amount;
+        }
+        return total;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(AMOUNTS)
+    public double sumDouble() {
+        double total = 0;
+        for (double amount : dollars) {
+            total += amount;
+        }
+        return total;
+    }
+
+    /* ------------------------------------------------------------------
+       Formatting
+       ------------------------------------------------------------------ */
+    @Benchmark
+    @OperationsPerInvocation(AMOUNTS)
+    public void writeCents(Blackhole blackhole) {
+        byte[] out = new byte[32];
+        for (long amount : cents) {
+            blackhole.consume(Money.write(amount, out, 0));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(AMOUNTS)
+    public void formatDouble(Blackhole blackhole) {
+        for (double amount : dollars) {
+            blackhole.consume(String.format("%.2f", amount));
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.pluralsight.bench;
+
+import com.pluralsight.Aggregates;
+import com.pluralsight.FinancialTracker;
+import com.pluralsight.Ledger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * The report queries without the printing: the same index lookups and totals that
+ * filterTransactionsByDate and filterTransactionsByVendor run, and the row selection of
+ * customSearch with several filters at once. Rendering is measured in RenderBenchmark.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryBenchmark {
+    // A month in the middle of the generated span.
+    private static final LocalDate MONTH_START = LedgerGenerator.FIRST_DAY.plusDays(LedgerGenerator.DAYS / 2);
+    private static final LocalDate MONTH_END = MONTH_START.plusDays(30);
+    private static final LocalDate YEAR_END = MONTH_START.plusDays(365);
+
+    private static final String HOT_VENDOR = LedgerGenerator.vendorName(1);
+    private static final String COLD_VENDOR = LedgerGenerator.vendorName(500);
+
+    /* ------------------------------------------------------------------
+       filterTransactionsByDate
+       ------------------------------------------------------------------ */
+    @Benchmark
+    public void filterByDateMonth(LedgerState state, Blackhole blackhole) {
+        filterByDate(state.ledger, MONTH_START, MONTH_END, blackhole);
+    }
+
+    @Benchmark
+    public void filterByDateYear(LedgerState state, Blackhole blackhole) {
+        filterByDate(state.ledger, MONTH_START, YEAR_END, blackhole);
+    }
+
+    private static void filterByDate(Ledger ledger, LocalDate start, LocalDate end, Blackhole blackhole) {
+        blackhole.consume(ledger.getDateIndex().range((int) start.toEpochDay(), (int) end.toEpochDay(), ledger.size()));
+        Aggregates.Totals totals = ledger.getAggregates().range(start, end);
+        blackhole.consume(totals);
+    }
+
+    /* ------------------------------------------------------------------
+       filterTransactionsByVendor
+       ------------------------------------------------------------------ */
+    @Benchmark
+    public void filterByHotVendor(LedgerState state, Blackhole blackhole) {
+        filterByVendor(state.ledger, HOT_VENDOR, blackhole);
+    }
+
+    @Benchmark
+    public void filterByColdVendor(LedgerState state, Blackhole blackhole) {
+        filterByVendor(state.ledger, COLD_VENDOR, blackhole);
+    }
+
+    private static void filterByVendor(Ledger ledger, String vendor, Blackhole blackhole) {
+        blackhole.consume(ledger.getVendorIndex().lookup(vendor, ledger.size()));
+        blackhole.consume(ledger.getAggregates().vendor(vendor));
+    }
+
+    /* ------------------------------------------------------------------
+       customSearch
+       ------------------------------------------------------------------ */
+    // Date range + vendor + minimum amount: index intersection, then an amount check per row.
+    @Benchmark
+    public int[] customSearchDateVendorAmount(LedgerState state) {
+        return FinancialTracker.customSearchRows(state.ledger, MONTH_START, YEAR_END, null, HOT_VENDOR,
+                null, -10_000, Long.MAX_VALUE);
+    }
+
+    // Description + vendor: two posting lists intersected, no date range.
+    @Benchmark
+    public int[] customSearchDescriptionVendor(LedgerState state) {
+        return FinancialTracker.customSearchRows(state.ledger, null, null, LedgerGenerator.description(7), HOT_VENDOR,
+                null, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    // Amount range only: no index applies, so every row is checked.
+    @Benchmark
+    public int[] customSearchAmountRange(LedgerState state) {
+        return FinancialTracker.customSearchRows(state.ledger, null, null, null, null,
+                null, 100_000, 200_000);
+    }
+}
@@ -0,0 +1,41 @@
+package com.pluralsight.bench;
+
+import com.pluralsight.ReportRenderer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Report rows per second through ReportRenderer into a discarding stream, so the number is
+ * the cost of formatting, not of the terminal. Each invocation renders the first PAGE rows
+ * (or the whole ledger when it is smaller); with fewer rows the score is still per row.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RenderBenchmark {
+    private static final int PAGE = 1000;
+
+    @Benchmark
+    @OperationsPerInvocation(PAGE)
+    public int renderRows(LedgerState state) {
+        ReportRenderer renderer = new ReportRenderer(OutputStream.nullOutputStream(), StandardCharsets.UTF_8);
+        int rows = Math.min(PAGE, state.ledger.size());
+        for (int shown = 0; shown < PAGE; shown += rows) {
+            renderer.rows(state.ledger, 0, rows);
+        }
+        renderer.flush();
+        return renderer.getRowsShown();
+    }
+}
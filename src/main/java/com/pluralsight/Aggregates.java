@@ -0,0 +1,255 @@
+package com.pluralsight;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.StampedLock;
+
+/*
+ * Running totals of a Ledger, kept per day, per month, per year and per vendor and updated
+ * on every append, so reports can print totals without walking the rows.
+ *
+ * Totals for any date range are assembled from the coarsest buckets that fit inside it
+ * (whole years, then whole months, then single days), which needs at most a few dozen map
+ * lookups regardless of how many rows the range holds. The balance as of a date is the
+ * same sum taken from the very first bucket.
+ *
+ * add() is called by one thread at a time under a StampedLock write stamp. Queries first try
+ * an optimistic read and only fall back to a read lock when a write raced with them, so
+ * readers normally take no lock at all. Queries always return copies.
+ */
+public class Aggregates {
+
+    /* ------------------------------------------------------------------
+       One bucket of totals
+       ------------------------------------------------------------------ */
+    public static class Totals {
+        private long depositCents;
+        private long paymentCents;
+        private long depositCount;
+        private long paymentCount;
+
+        public Totals() {
+        }
+
+        Totals(long depositCount, long depositCents, long paymentCount, long paymentCents) {
+            this.depositCount = depositCount;
+            this.depositCents = depositCents;
+            this.paymentCount = paymentCount;
+            this.paymentCents = paymentCents;
+        }
+
+        void add(long amountCents) {
+            if (amountCents >= 0) {
+                depositCents += amountCents;
+                depositCount++;
+            } else {
+                paymentCents += amountCents;
+                paymentCount++;
+            }
+        }
+
+        Totals copy() {
+            Totals copy = new Totals();
+            copy.add(this);
+            return copy;
+        }
+
+        void add(Totals other) {
+            depositCents += other.depositCents;
+            paymentCents += other.paymentCents;
+            depositCount += other.depositCount;
+            paymentCount += other.paymentCount;
+        }
+
+        public long getDepositCents() {
+            return depositCents;
+        }
+
+        // Payments are stored negative, so this is zero or below.
+        public long getPaymentCents() {
+            return paymentCents;
+        }
+
+        public long getNetCents() {
+            return depositCents + paymentCents;
+        }
+
+        public long getDepositCount() {
+            return depositCount;
+        }
+
+        public long getPaymentCount() {
+            return paymentCount;
+        }
+
+        public long getCount() {
+            return depositCount + paymentCount;
+        }
+    }
+
+    private final ConcurrentHashMap<Integer, Totals> byDay = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, Totals> byMonth = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, Totals> byYear = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Totals> byVendor = new ConcurrentHashMap<>();
+    private final Totals overall = new Totals();
+    private final StampedLock lock = new StampedLock();
+
+    // String table id -> vendor bucket, so a vendor name is folded once and not per row.
+    private Totals[] vendorOfString = new Totals[64];
+
+    // Most rows arrive in date order, so remember the buckets of the last day seen.
+    private int lastDay = Integer.MIN_VALUE;
+    private Totals lastDayTotals;
+    private Totals lastMonthTotals;
+    private Totals lastYearTotals;
+
+    //ADD-Folds one row into every bucket it belongs to.
+    public void add(int epochDay, int vendorId, long amountCents, StringTable strings) {
+        long stamp = lock.writeLock();
+        try {
+            addRow(epochDay, vendorId, amountCents, strings);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private void addRow(int epochDay, int vendorId, long amountCents, StringTable strings) {
+        if (epochDay != lastDay) {
+            LocalDate date = LocalDate.ofEpochDay(epochDay);
+            lastDay = epochDay;
+            lastDayTotals = byDay.computeIfAbsent(epochDay, k -> new Totals());
+            lastMonthTotals = byMonth.computeIfAbsent(monthKey(date.getYear(), date.getMonthValue()), k -> new Totals());
+            lastYearTotals = byYear.computeIfAbsent(date.getYear(), k -> new Totals());
+        }
+        lastDayTotals.add(amountCents);
+        lastMonthTotals.add(amountCents);
+        lastYearTotals.add(amountCents);
+        vendorTotals(vendorId, strings).add(amountCents);
+        overall.add(amountCents);
+    }
+
+    private Totals vendorTotals(int vendorId, StringTable strings) {
+        if (vendorId >= vendorOfString.length) {
+            vendorOfString = Arrays.copyOf(vendorOfString, Math.max(vendorId + 1, vendorOfString.length * 2));
+        }
+        Totals totals = vendorOfString[vendorId];
+        if (totals == null) {
+            totals = byVendor.computeIfAbsent(TextIndex.fold(strings.get(vendorId)), k -> new Totals());
+            vendorOfString[vendorId] = totals;
+        }
+        return totals;
+    }
+
+    private static int monthKey(int year, int month) {
+        return year * 12 + (month - 1);
+    }
+
+    /* ------------------------------------------------------------------
+       Queries
+       ------------------------------------------------------------------ */
+    public Totals overall() {
+        long stamp = lock.tryOptimisticRead();
+        Totals result = overall.copy();
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                result = overall.copy();
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return result;
+    }
+
+    // Totals for one vendor, ignoring case. Never null.
+    public Totals vendor(String vendor) {
+        String key = TextIndex.fold(vendor);
+        long stamp = lock.tryOptimisticRead();
+        Totals result = vendorCopy(key);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                result = vendorCopy(key);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return result;
+    }
+
+    private Totals vendorCopy(String key) {
+        Totals totals = byVendor.get(key);
+        return totals == null ? new Totals() : totals.copy();
+    }
+
+    //RANGE-Totals of every row dated between start and end (inclusive).
+    public Totals range(LocalDate start, LocalDate end) {
+        long stamp = lock.tryOptimisticRead();
+        Totals result = sumRange(start, end);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                result = sumRange(start, end);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return result;
+    }
+
+    private Totals sumRange(LocalDate start, LocalDate end) {
+        Totals result = new Totals();
+        LocalDate day = start;
+        while (!day.isAfter(end)) {
+            if (day.getDayOfYear() == 1 && !day.plusYears(1).minusDays(1).isAfter(end)) {
+                addBucket(result, byYear.get(day.getYear()));
+                day = day.plusYears(1);
+            } else if (day.getDayOfMonth() == 1 && !day.plusMonths(1).minusDays(1).isAfter(end)) {
+                addBucket(result, byMonth.get(monthKey(day.getYear(), day.getMonthValue())));
+                day = day.plusMonths(1);
+            } else {
+                addBucket(result, byDay.get((int) day.toEpochDay()));
+                day = day.plusDays(1);
+            }
+        }
+        return result;
+    }
+
+    //BALANCE-Net of every row dated on or before the given day.
+    public long balanceAsOf(LocalDate date) {
+        long stamp = lock.tryOptimisticRead();
+        long balance = sumBalance(date);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                balance = sumBalance(date);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return balance;
+    }
+
+    private long sumBalance(LocalDate date) {
+        long balance = 0;
+        for (Map.Entry<Integer, Totals> year : byYear.entrySet()) {
+            if (year.getKey() < date.getYear()) {
+                balance += year.getValue().getNetCents();
+            }
+        }
+        return balance + sumRange(date.withDayOfYear(1), date).getNetCents();
+    }
+
+    private static void addBucket(Totals result, Totals bucket) {
+        if (bucket != null) {
+            result.add(bucket);
+        }
+    }
+
+    long estimatedBytes() {
+        long buckets = byDay.size() + byMonth.size() + byYear.size() + byVendor.size();
+        return buckets * (48 + 32 + 16) + vendorOfString.length * 4L;
+    }
+}
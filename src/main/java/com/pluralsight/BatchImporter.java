@@ -0,0 +1,553 @@
+package com.pluralsight;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/*
+ * Non-interactive import of a large external file (e.g. a bank export) into the ledger.
+ *
+ * The file streams through four stages, each on its own thread, connected by bounded queues
+ * of row batches so a slow stage holds back the ones before it instead of piling rows up
+ * in memory:
+ *
+ *   parse     splits each line into fields (ledger "|" lines or comma separated CSV)
+ *   validate  applies the same rules as the Add Deposit / Make Payment prompts
+ *   dedup     drops rows whose (date, time, vendor, amount) is already in the ledger or
+ *             earlier in the file
+ *   append    adds each batch to the ledger in one appendAll and hands its lines to the
+ *             journal, waiting once per batch for the group commit
+ *
+ * Rejected lines are counted by reason and the first few are kept for the report.
+ */
+public class BatchImporter {
+    private static final int BATCH_SIZE = 1024;
+    private static final int QUEUE_BATCHES = 16;
+    private static final int MAX_SAMPLES = 20;
+    private static final List<Row> END = Collections.emptyList();
+
+    private static final DateTimeFormatter DATE_FMT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    private static final DateTimeFormatter TIME_FMT = DateTimeFormatter.ofPattern("HH:mm:ss");
+
+    /* ------------------------------------------------------------------
+       Options
+       ------------------------------------------------------------------ */
+    // How lines are split into date, time, description, vendor and amount.
+    public enum Format { LEDGER, CSV }
+
+    // How the amount column is read: signed as in the ledger file, or all positive amounts
+    // that are deposits or payments (payments are stored negative, like the prompts do).
+    public enum AmountType { SIGNED, DEPOSIT, PAYMENT }
+
+    /* ------------------------------------------------------------------
+       Report
+       ------------------------------------------------------------------ */
+    public static class Result {
+        private final long linesRead;
+        private final long rowsImported;
+        private final Map<String, Long> rejectCounts;
+        private final List<String> rejectSamples;
+        private final long elapsedNanos;
+
+        Result(long linesRead, long rowsImported, Map<String, Long> rejectCounts, List<String> rejectSamples,
+               long elapsedNanos) {
+            this.linesRead = linesRead;
+            this.rowsImported = rowsImported;
+            this.rejectCounts = rejectCounts;
+            this.rejectSamples = rejectSamples;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public long getLinesRead() {
+            return linesRead;
+        }
+
+        public long getRowsImported() {
+            return rowsImported;
+        }
+
+        public long getRejected() {
+            long total = 0;
+            for (long count : rejectCounts.values()) {
+                total += count;
+            }
+            return total;
+        }
+
+        // Reject reason -> number of lines.
+        public Map<String, Long> getRejectCounts() {
+            return rejectCounts;
+        }
+
+        // "line N: reason" for the first rejected lines, in line order.
+        public List<String> getRejectSamples() {
+            return rejectSamples;
+        }
+
+        public double getSeconds() {
+            return elapsedNanos / 1e9;
+        }
+
+        public double getRowsPerSecond() {
+            return elapsedNanos == 0 ? 0 : linesRead / getSeconds();
+        }
+    }
+
+    /* ------------------------------------------------------------------
+       Rows in flight
+       ------------------------------------------------------------------ */
+    private static final class Row {
+        final long line;
+        final String[] fields;
+        LocalDate date;
+        LocalTime time;
+        String description;
+        String vendor;
+        long amountCents;
+
+        Row(long line, String[] fields) {
+            this.line = line;
+            this.fields = fields;
+        }
+    }
+
+    // Dedup key: the same (date, time, vendor, amount) is treated as the same transaction.
+    private static final class Key {
+        final long dateTime;
+        final String vendor;
+        final long amountCents;
+
+        Key(int epochDay, int secondOfDay, String vendor, long amountCents) {
+            this.dateTime = DateIndex.key(epochDay, secondOfDay);
+            this.vendor = vendor;
+            this.amountCents = amountCents;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return dateTime == key.dateTime && amountCents == key.amountCents && vendor.equals(key.vendor);
+        }
+
+        @Override
+        public int hashCode() {
+            return (Long.hashCode(dateTime) * 31 + vendor.hashCode()) * 31 + Long.hashCode(amountCents);
+        }
+    }
+
+    private static final class Reject {
+        final long line;
+        final String reason;
+
+        Reject(long line, String reason) {
+            this.line = line;
+            this.reason = reason;
+        }
+    }
+
+    // Rejects seen by one stage; only that stage's thread touches it.
+    private static final class Rejects {
+        final Map<String, Long> counts = new LinkedHashMap<>();
+        final List<Reject> samples = new ArrayList<>();
+
+        void add(long line, String reason) {
+            counts.merge(reason, 1L, Long::sum);
+            if (samples.size() < MAX_SAMPLES) {
+                samples.add(new Reject(line, reason));
+            }
+        }
+    }
+
+    private final Ledger ledger;
+    private final Journal journal;
+    private final Format format;
+    private final AmountType amountType;
+
+    private volatile boolean aborted;
+    private volatile Exception failure;
+
+    public BatchImporter(Ledger ledger, Journal journal, Format format, AmountType amountType) {
+        this.ledger = ledger;
+        this.journal = journal;
+        this.format = format;
+        this.amountType = amountType;
+    }
+
+    //IMPORT-Runs the whole pipeline over the file and returns the summary once every row is committed.
+    public Result importFile(Path file) throws IOException {
+        BlockingQueue<List<Row>> parsed = new ArrayBlockingQueue<>(QUEUE_BATCHES);
+        BlockingQueue<List<Row>> validated = new ArrayBlockingQueue<>(QUEUE_BATCHES);
+        BlockingQueue<List<Row>> unique = new ArrayBlockingQueue<>(QUEUE_BATCHES);
+        Rejects parseRejects = new Rejects();
+        Rejects validateRejects = new Rejects();
+        Rejects dedupRejects = new Rejects();
+        long[] linesRead = new long[1];
+        long[] imported = new long[1];
+
+        long start = System.nanoTime();
+        List<Thread> stages = List.of(
+                stage("import-parse", () -> linesRead[0] = parse(file, parsed, parseRejects)),
+                stage("import-validate", () -> validate(parsed, validated, validateRejects)),
+                stage("import-dedup", () -> dedup(validated, unique, dedupRejects)),
+                stage("import-append", () -> imported[0] = append(unique)));
+        stages.forEach(Thread::start);
+        for (Thread stage : stages) {
+            try {
+                stage.join();
+            } catch (InterruptedException e) {
+                aborted = true;
+                Thread.currentThread().interrupt();
+                throw new IOException("Import interrupted", e);
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        if (failure != null) {
+            throw failure instanceof IOException ? (IOException) failure : new IOException(failure);
+        }
+        return new Result(linesRead[0], imported[0], mergeCounts(parseRejects, validateRejects, dedupRejects),
+                mergeSamples(parseRejects, validateRejects, dedupRejects), elapsed);
+    }
+
+    private interface Stage {
+        void run() throws Exception;
+    }
+
+    private Thread stage(String name, Stage body) {
+        return new Thread(() -> {
+            try {
+                body.run();
+            } catch (Exception e) {
+                if (failure == null) {
+                    failure = e;
+                }
+                aborted = true;
+            }
+        }, name);
+    }
+
+    /* ------------------------------------------------------------------
+       Stage 1: parse
+       ------------------------------------------------------------------ */
+    private long parse(Path file, BlockingQueue<List<Row>> out, Rejects rejects) throws IOException, InterruptedException {
+        long line = 0;
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(Files.newInputStream(file), StandardCharsets.UTF_8), 1 << 20)) {
+            List<Row> batch = new ArrayList<>(BATCH_SIZE);
+            String text;
+            while ((text = reader.readLine()) != null && !aborted) {
+                line++;
+                if (text.isBlank()) {
+                    continue;
+                }
+                String[] fields = format == Format.CSV ? splitCsv(text) : splitLedger(text);
+                if (fields == null) {
+                    rejects.add(line, "wrong number of fields");
+                    continue;
+                }
+                if (fields.length == 7) {
+                    // A journal line: checked like the loader does, then its sequence and CRC are dropped.
+                    if (!checksumMatches(text)) {
+                        rejects.add(line, "checksum mismatch");
+                        continue;
+                    }
+                    fields = Arrays.copyOf(fields, 5);
+                }
+                if (line == 1 && format == Format.CSV && !startsWithDigit(fields[0])) {
+                    continue; // Header row.
+                }
+                batch.add(new Row(line, fields));
+                if (batch.size() == BATCH_SIZE) {
+                    put(out, batch);
+                    batch = new ArrayList<>(BATCH_SIZE);
+                }
+            }
+            if (!batch.isEmpty()) {
+                put(out, batch);
+            }
+        } finally {
+            put(out, END);
+        }
+        return line;
+    }
+
+    // date|time|description|vendor|amount, optionally followed by the journal's |sequence|crc.
+    private static String[] splitLedger(String text) {
+        String[] fields = text.split("\\|", -1);
+        return fields.length == 5 || fields.length == 7 ? fields : null;
+    }
+
+    // The CRC32 (hex) after the last '|' covers every byte before it, as written by the Journal.
+    private static boolean checksumMatches(String text) {
+        int lastPipe = text.lastIndexOf('|');
+        try {
+            long expected = Long.parseLong(text.substring(lastPipe + 1), 16);
+            CRC32 crc = new CRC32();
+            crc.update(text.substring(0, lastPipe).getBytes(StandardCharsets.UTF_8));
+            return crc.getValue() == expected;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    // date,time,description,vendor,amount with optional double quotes ("" inside quotes is a quote).
+    private static String[] splitCsv(String text) {
+        String[] fields = new String[5];
+        int count = 0;
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < text.length() && text.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                if (count == fields.length) {
+                    return null;
+                }
+                fields[count++] = field.toString();
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted || count != fields.length - 1) {
+            return null;
+        }
+        fields[count] = field.toString();
+        return fields;
+    }
+
+    private static boolean startsWithDigit(String value) {
+        String trimmed = value.trim();
+        return !trimmed.isEmpty() && Character.isDigit(trimmed.charAt(0));
+    }
+
+    /* ------------------------------------------------------------------
+       Stage 2: validate
+       ------------------------------------------------------------------ */
+    private void validate(BlockingQueue<List<Row>> in, BlockingQueue<List<Row>> out, Rejects rejects)
+            throws InterruptedException {
+        try {
+            List<Row> batch;
+            while ((batch = take(in)) != END) {
+                List<Row> valid = new ArrayList<>(batch.size());
+                for (Row row : batch) {
+                    String reason = check(row);
+                    if (reason == null) {
+                        valid.add(row);
+                    } else {
+                        rejects.add(row.line, reason);
+                    }
+                }
+                if (!valid.isEmpty()) {
+                    put(out, valid);
+                }
+            }
+        } finally {
+            put(out, END);
+        }
+    }
+
+    // Fills in the typed values of the row and returns null, or returns why the row is rejected.
+    private String check(Row row) {
+        try {
+            row.date = LocalDate.parse(row.fields[0].trim(), DATE_FMT);
+        } catch (RuntimeException e) {
+            return "invalid date";
+        }
+        try {
+            // HH:mm:ss like the prompts; HH:mm is also accepted as older ledger lines use it.
+            String time = row.fields[1].trim();
+            row.time = time.length() == 5 ? LocalTime.parse(time) : LocalTime.parse(time, TIME_FMT);
+        } catch (RuntimeException e) {
+            return "invalid time";
+        }
+        row.description = row.fields[2].trim();
+        row.vendor = row.fields[3].trim();
+        if (row.description.indexOf('|') >= 0 || row.vendor.indexOf('|') >= 0) {
+            return "'|' in description or vendor";
+        }
+        long amount;
+        try {
+            amount = Money.parseCents(row.fields[4].trim());
+        } catch (NumberFormatException e) {
+            return "invalid amount";
+        }
+        switch (amountType) {
+            case SIGNED -> {
+                if (amount == 0) {
+                    return "zero amount";
+                }
+            }
+            case DEPOSIT -> {
+                if (amount <= 0) {
+                    return "amount not positive";
+                }
+            }
+            case PAYMENT -> {
+                if (amount <= 0) {
+                    return "amount not positive";
+                }
+                amount = -amount;
+            }
+        }
+        row.amountCents = amount;
+        return null;
+    }
+
+    /* ------------------------------------------------------------------
+       Stage 3: dedup
+       ------------------------------------------------------------------ */
+    private void dedup(BlockingQueue<List<Row>> in, BlockingQueue<List<Row>> out, Rejects rejects)
+            throws InterruptedException {
+        try {
+            // Rows already in the ledger are found through its date index; only the imported rows
+            // are kept in a set. Vendors are folded like the vendor index does and shared between keys.
+            DateIndex index = ledger.getDateIndex();
+            int existing = ledger.size();
+            HashMap<String, String> vendors = new HashMap<>();
+            HashSet<Key> seen = new HashSet<>();
+            // Exports are mostly in date order, so one day's rows are looked up once and reused.
+            int lastDay = Integer.MIN_VALUE;
+            int[] dayRows = new int[0];
+
+            List<Row> batch;
+            while ((batch = take(in)) != END) {
+                List<Row> fresh = new ArrayList<>(batch.size());
+                for (Row row : batch) {
+                    int day = (int) row.date.toEpochDay();
+                    if (day != lastDay) {
+                        lastDay = day;
+                        dayRows = index.range(day, day, existing);
+                    }
+                    String vendor = vendors.computeIfAbsent(TextIndex.fold(row.vendor), v -> v);
+                    Key key = new Key(day, row.time.toSecondOfDay(), vendor, row.amountCents);
+                    if (!inLedger(dayRows, key) && seen.add(key)) {
+                        fresh.add(row);
+                    } else {
+                        rejects.add(row.line, "duplicate");
+                    }
+                }
+                if (!fresh.isEmpty()) {
+                    put(out, fresh);
+                }
+            }
+        } finally {
+            put(out, END);
+        }
+    }
+
+    // True when one of the given ledger rows (all on the key's day) has the key's time, amount and vendor.
+    private boolean inLedger(int[] dayRows, Key key) {
+        for (int row : dayRows) {
+            if (DateIndex.key(ledger.getEpochDay(row), ledger.getSecondOfDay(row)) == key.dateTime
+                    && ledger.getAmountCents(row) == key.amountCents
+                    && TextIndex.fold(ledger.getVendor(row)).equals(key.vendor)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /* ------------------------------------------------------------------
+       Stage 4: append
+       ------------------------------------------------------------------ */
+    private long append(BlockingQueue<List<Row>> in) throws IOException, InterruptedException {
+        long imported = 0;
+        StringBuilder line = new StringBuilder(128);
+        List<Row> batch;
+        while ((batch = take(in)) != END) {
+            Ledger rows = new Ledger(false);
+            CompletableFuture<Long> last = null;
+            for (Row row : batch) {
+                rows.append(row.date, row.time, row.description, row.vendor, row.amountCents);
+                line.setLength(0);
+                line.append(row.date.format(DATE_FMT)).append('|').append(row.time.format(TIME_FMT)).append('|')
+                        .append(row.description).append('|').append(row.vendor).append('|');
+                last = journal.append(Money.append(line, row.amountCents).toString());
+            }
+            ledger.appendAll(rows);
+            try {
+                // The journal commits in order, so the last line being durable covers the batch.
+                last.join();
+            } catch (RuntimeException e) {
+                throw new IOException("Journal append failed", e.getCause());
+            }
+            imported += batch.size();
+        }
+        return imported;
+    }
+
+    /* ------------------------------------------------------------------
+       Queue helpers
+       ------------------------------------------------------------------ */
+    // Blocks while the queue is full, but gives up once another stage has failed.
+    private void put(BlockingQueue<List<Row>> queue, List<Row> batch) throws InterruptedException {
+        while (!queue.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+            if (aborted) {
+                return;
+            }
+        }
+    }
+
+    private List<Row> take(BlockingQueue<List<Row>> queue) throws InterruptedException {
+        List<Row> batch;
+        while ((batch = queue.poll(100, TimeUnit.MILLISECONDS)) == null) {
+            if (aborted) {
+                return END;
+            }
+        }
+        return batch;
+    }
+
+    private static Map<String, Long> mergeCounts(Rejects... stages) {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (Rejects stage : stages) {
+            stage.counts.forEach((reason, count) -> counts.merge(reason, count, Long::sum));
+        }
+        return counts;
+    }
+
+    private static List<String> mergeSamples(Rejects... stages) {
+        List<Reject> rejects = new ArrayList<>();
+        for (Rejects stage : stages) {
+            rejects.addAll(stage.samples);
+        }
+        rejects.sort((a, b) -> Long.compare(a.line, b.line));
+        List<String> samples = new ArrayList<>();
+        for (int i = 0; i < rejects.size() && i < MAX_SAMPLES; i++) {
+            samples.add("line " + rejects.get(i).line + ": " + rejects.get(i).reason);
+        }
+        return samples;
+    }
+}
@@ -0,0 +1,319 @@
+package com.pluralsight;
+
+import java.util.Arrays;
+
+/*
+ * Row ids of a Ledger kept sorted by date and time.
+ *
+ * The index has two sorted runs: a large main run and a small delta run. A row that is not
+ * older than the newest indexed row (the usual case) is appended to the main run in O(1).
+ * An out-of-order row is inserted into the delta run, and the delta is merged into the main
+ * run once it grows past DELTA_LIMIT, so a single insert never shifts the whole index.
+ *
+ * Every row is indexed by a long sort key (epoch day and second of day) so binary searches
+ * never have to go back to the ledger columns.
+ *
+ * Updates come from one thread at a time (the Ledger's append lock). After each update the
+ * runs are published as one immutable Runs object. The main run only ever grows past its
+ * published size, and delta inserts and merges always write fresh arrays, so readers never
+ * lock and never see a run change under them.
+ */
+public class DateIndex {
+    private static final int DELTA_LIMIT = 4096;
+    private static final int TIME_BITS = 17; // 86_399 seconds fit in 17 bits
+
+    private static final class Runs {
+        final long[] mainKeys;
+        final int[] mainRows;
+        final int mainSize;
+        final long[] deltaKeys;
+        final int[] deltaRows;
+
+        Runs(long[] mainKeys, int[] mainRows, int mainSize, long[] deltaKeys, int[] deltaRows) {
+            this.mainKeys = mainKeys;
+            this.mainRows = mainRows;
+            this.mainSize = mainSize;
+            this.deltaKeys = deltaKeys;
+            this.deltaRows = deltaRows;
+        }
+    }
+
+    // Writer-side state; readers only look at the published Runs.
+    private long[] mainKeys = new long[1024];
+    private int[] mainRows = new int[1024];
+    private int mainSize;
+    private long[] deltaKeys = new long[0];
+    private int[] deltaRows = new int[0];
+
+    private volatile Runs published = new Runs(mainKeys, mainRows, 0, deltaKeys, deltaRows);
+
+    static long key(int epochDay, int secondOfDay) {
+        return ((long) epochDay << TIME_BITS) | secondOfDay;
+    }
+
+    /* ------------------------------------------------------------------
+       Updates
+       ------------------------------------------------------------------ */
+    //ADD-Indexes a single row.
+    public void add(int row, int epochDay, int secondOfDay) {
+        long key = key(epochDay, secondOfDay);
+        if (mainSize == 0 || key >= mainKeys[mainSize - 1]) {
+            if (mainSize == mainKeys.length) {
+                mainKeys = Arrays.copyOf(mainKeys, mainSize * 2);
+                mainRows = Arrays.copyOf(mainRows, mainSize * 2);
+            }
+            mainKeys[mainSize] = key;
+            mainRows[mainSize] = row;
+            mainSize++;
+            publish();
+            return;
+        }
+
+        // Out of order: copy the delta with the row inserted after any equal keys, so equal
+        // timestamps keep insertion order.
+        int deltaSize = deltaKeys.length;
+        int position = upperBound(deltaKeys, deltaSize, key);
+        long[] keys = new long[deltaSize + 1];
+        int[] rows = new int[deltaSize + 1];
+        System.arraycopy(deltaKeys, 0, keys, 0, position);
+        System.arraycopy(deltaRows, 0, rows, 0, position);
+        keys[position] = key;
+        rows[position] = row;
+        System.arraycopy(deltaKeys, position, keys, position + 1, deltaSize - position);
+        System.arraycopy(deltaRows, position, rows, position + 1, deltaSize - position);
+        if (keys.length >= DELTA_LIMIT) {
+            merge(keys, rows, keys.length);
+            deltaKeys = new long[0];
+            deltaRows = new int[0];
+        } else {
+            deltaKeys = keys;
+            deltaRows = rows;
+        }
+        publish();
+    }
+
+    //ADD ALL-Indexes rows [fromRow, toRow) from their date and time columns, with one sort and one merge instead of row by row.
+    public void addAll(int[] dates, int[] times, int fromRow, int toRow) {
+        int count = toRow - fromRow;
+        if (count == 0) {
+            return;
+        }
+        long[] keys = new long[count];
+        int[] rows = new int[count];
+        boolean sorted = true;
+        for (int i = 0; i < count; i++) {
+            int row = fromRow + i;
+            keys[i] = key(dates[row], times[row]);
+            rows[i] = row;
+            if (i > 0 && keys[i] < keys[i - 1]) {
+                sorted = false;
+            }
+        }
+        if (!sorted) {
+            sortByKey(keys, rows);
+        }
+        if (deltaKeys.length == 0 && (mainSize == 0 || keys[0] >= mainKeys[mainSize - 1])) {
+            // Already newer than everything indexed: plain append, no merge needed.
+            if (mainSize + count > mainKeys.length) {
+                int capacity = Math.max(mainSize + count, mainKeys.length * 2);
+                mainKeys = Arrays.copyOf(mainKeys, capacity);
+                mainRows = Arrays.copyOf(mainRows, capacity);
+            }
+            System.arraycopy(keys, 0, mainKeys, mainSize, count);
+            System.arraycopy(rows, 0, mainRows, mainSize, count);
+            mainSize += count;
+            publish();
+            return;
+        }
+        if (deltaKeys.length + count < DELTA_LIMIT) {
+            // Small out-of-order batch: fold it into the delta, which is far cheaper than
+            // rewriting the main run for every batch.
+            long[] mergedKeys = new long[deltaKeys.length + count];
+            int[] mergedRows = new int[deltaKeys.length + count];
+            mergeRuns(deltaKeys, deltaRows, deltaKeys.length, keys, rows, count, mergedKeys, mergedRows);
+            deltaKeys = mergedKeys;
+            deltaRows = mergedRows;
+            publish();
+            return;
+        }
+        if (deltaKeys.length > 0) {
+            merge(deltaKeys, deltaRows, deltaKeys.length);
+            deltaKeys = new long[0];
+            deltaRows = new int[0];
+        }
+        merge(keys, rows, count);
+        publish();
+    }
+
+    // Merges a sorted run into a fresh main run.
+    private void merge(long[] keys, int[] rows, int count) {
+        int capacity = Math.max(mainKeys.length, mainSize + count);
+        long[] mergedKeys = new long[capacity];
+        int[] mergedRows = new int[capacity];
+        mergeRuns(mainKeys, mainRows, mainSize, keys, rows, count, mergedKeys, mergedRows);
+        mainKeys = mergedKeys;
+        mainRows = mergedRows;
+        mainSize += count;
+    }
+
+    // Merges two sorted runs into out. Ties go to the first run, which holds the older rows,
+    // so equal timestamps keep insertion order.
+    private static void mergeRuns(long[] firstKeys, int[] firstRows, int firstSize,
+                                  long[] secondKeys, int[] secondRows, int secondSize,
+                                  long[] outKeys, int[] outRows) {
+        int a = 0;
+        int b = 0;
+        int out = 0;
+        while (a < firstSize && b < secondSize) {
+            if (secondKeys[b] < firstKeys[a]) {
+                outKeys[out] = secondKeys[b];
+                outRows[out++] = secondRows[b++];
+            } else {
+                outKeys[out] = firstKeys[a];
+                outRows[out++] = firstRows[a++];
+            }
+        }
+        System.arraycopy(firstKeys, a, outKeys, out, firstSize - a);
+        System.arraycopy(firstRows, a, outRows, out, firstSize - a);
+        out += firstSize - a;
+        System.arraycopy(secondKeys, b, outKeys, out, secondSize - b);
+        System.arraycopy(secondRows, b, outRows, out, secondSize - b);
+    }
+
+    private void publish() {
+        published = new Runs(mainKeys, mainRows, mainSize, deltaKeys, deltaRows);
+    }
+
+    // Stable sort of rows by key. Packs the key offset and the position into one long when it
+    // fits, which lets Arrays.sort work on primitives; otherwise falls back to a boxed sort.
+    static void sortByKey(long[] keys, int[] rows) {
+        int count = keys.length;
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (long key : keys) {
+            min = Math.min(min, key);
+            max = Math.max(max, key);
+        }
+        int positionBits = 32 - Integer.numberOfLeadingZeros(Math.max(1, count - 1));
+        long[] sortedKeys = new long[count];
+        int[] sortedRows = new int[count];
+        if (max - min < (1L << (63 - positionBits))) {
+            long[] packed = new long[count];
+            for (int i = 0; i < count; i++) {
+                packed[i] = ((keys[i] - min) << positionBits) | i;
+            }
+            Arrays.sort(packed);
+            long mask = (1L << positionBits) - 1;
+            for (int i = 0; i < count; i++) {
+                int position = (int) (packed[i] & mask);
+                sortedKeys[i] = keys[position];
+                sortedRows[i] = rows[position];
+            }
+        } else {
+            Integer[] order = new Integer[count];
+            for (int i = 0; i < count; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (x, y) -> Long.compare(keys[x], keys[y]));
+            for (int i = 0; i < count; i++) {
+                sortedKeys[i] = keys[order[i]];
+                sortedRows[i] = rows[order[i]];
+            }
+        }
+        System.arraycopy(sortedKeys, 0, keys, 0, count);
+        System.arraycopy(sortedRows, 0, rows, 0, count);
+    }
+
+    /* ------------------------------------------------------------------
+       Queries
+       ------------------------------------------------------------------ */
+    public int size() {
+        Runs runs = published;
+        return runs.mainSize + runs.deltaKeys.length;
+    }
+
+    long estimatedBytes() {
+        Runs runs = published;
+        return 4 * 16L + runs.mainKeys.length * 12L + runs.deltaKeys.length * 12L;
+    }
+
+    //RANGE-Row ids dated between startDay and endDay (inclusive), oldest first.
+    public int[] range(int startDay, int endDay) {
+        return range(startDay, endDay, Integer.MAX_VALUE);
+    }
+
+    // Same, leaving out rows at or above rowLimit (rows newer than the caller's view of the ledger).
+    public int[] range(int startDay, int endDay, int rowLimit) {
+        if (startDay > endDay) {
+            return new int[0];
+        }
+        Runs runs = published;
+        long from = key(startDay, 0);
+        long to = key(endDay, 86_399);
+        int mainFrom = lowerBound(runs.mainKeys, runs.mainSize, from);
+        int mainTo = upperBound(runs.mainKeys, runs.mainSize, to);
+        int deltaSize = runs.deltaKeys.length;
+        int deltaFrom = lowerBound(runs.deltaKeys, deltaSize, from);
+        int deltaTo = upperBound(runs.deltaKeys, deltaSize, to);
+
+        int[] result = new int[(mainTo - mainFrom) + (deltaTo - deltaFrom)];
+        int out = 0;
+        int a = mainFrom;
+        int b = deltaFrom;
+        while (a < mainTo || b < deltaTo) {
+            int row;
+            if (b == deltaTo || (a < mainTo && runs.deltaKeys[b] >= runs.mainKeys[a])) {
+                row = runs.mainRows[a++];
+            } else {
+                row = runs.deltaRows[b++];
+            }
+            if (row < rowLimit) {
+                result[out++] = row;
+            }
+        }
+        return out == result.length ? result : Arrays.copyOf(result, out);
+    }
+
+    //COUNT-Number of rows in the range, in O(log n) without materializing them.
+    public int count(int startDay, int endDay) {
+        if (startDay > endDay) {
+            return 0;
+        }
+        Runs runs = published;
+        long from = key(startDay, 0);
+        long to = key(endDay, 86_399);
+        int deltaSize = runs.deltaKeys.length;
+        return upperBound(runs.mainKeys, runs.mainSize, to) - lowerBound(runs.mainKeys, runs.mainSize, from)
+                + upperBound(runs.deltaKeys, deltaSize, to) - lowerBound(runs.deltaKeys, deltaSize, from);
+    }
+
+    // First position whose key is >= key.
+    private static int lowerBound(long[] keys, int size, long key) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // First position whose key is > key.
+    private static int upperBound(long[] keys, int size, long key) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid] <= key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,365 @@
+package com.pluralsight;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.zip.CRC32;
+
+/*
+ * Follows the ledger file while other processes append to it, so their rows show up in the
+ * running ledger (and its indexes and aggregates) without a reload.
+ *
+ * The tailer remembers the byte offset it has consumed. A background thread wakes up on a
+ * WatchService event for the file's folder, or every pollMillis when no event comes (some
+ * file systems never send one), and parses only the bytes after that offset:
+ *
+ *  - A last line without its newline is left for the next round, so a row that is still
+ *    being written is never parsed half way.
+ *  - Lines written by our own Journal are skipped; those rows are already in the ledger.
+ *    The journal reports each record's sequence number and CRC through ownWrites() before
+ *    its append completes, and poll() runs under the same lock writers hold while appending,
+ *    so a record is always known before the tailer can see its line. A line is ours when its
+ *    last two fields name such a record and its CRC checks out; byte offsets are not used, as
+ *    other processes may append between our write and any look at the file size.
+ *  - A file that got shorter (truncated) or has a new file key (rotated: renamed away and
+ *    created again, or swapped for a compacted copy) can not be matched up with the rows
+ *    already in the ledger, which only ever grows. When it is empty, reading goes on from
+ *    offset 0. When it still has lines, tailing stops instead of adding them a second time;
+ *    a restart loads the file as it is now.
+ */
+public class FileTailer implements AutoCloseable {
+
+    public interface Listener {
+        // Rows fromRow up to toRow were added from lines other processes appended; errors lists the lines skipped.
+        void appended(int fromRow, int toRow, long lines, List<String> errors);
+
+        // The file was truncated to nothing, or replaced by an empty file when rotated is true; it is followed from the start.
+        void reset(boolean rotated);
+
+        // The file got shorter or was replaced but still has lines, which may be rows the ledger already holds; tailing has stopped.
+        void stopped(boolean rotated);
+    }
+
+    private final Path path;
+    private final Ledger ledger;
+    private final Lock lock;
+    private final Listener listener;
+    private final long pollMillis;
+    // Our journal's records not seen in the file yet: sequence -> CRC.
+    private final ConcurrentHashMap<Long, Long> ownRecords = new ConcurrentHashMap<>();
+
+    private volatile long offset;
+    private Object fileKey;
+    private Thread thread;
+    private volatile WatchService watcher;
+    private volatile boolean closed;
+    private volatile boolean stopped;
+
+    private volatile long rowsTailed;
+    private volatile long resets;
+    private volatile IOException lastError;
+
+    public FileTailer(Path path, Ledger ledger, long offset, Lock lock, Listener listener, long pollMillis) {
+        this.path = path;
+        this.ledger = ledger;
+        this.offset = offset;
+        this.lock = lock;
+        this.listener = listener;
+        this.pollMillis = Math.max(1, pollMillis);
+        try {
+            this.fileKey = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+        } catch (IOException e) {
+            this.fileKey = null;
+        }
+    }
+
+    //OWN WRITES-Hand this to Journal.setCommitListener so the tailer skips what the journal wrote.
+    public Journal.CommitListener ownWrites() {
+        return ownRecords::put;
+    }
+
+    //START-Starts the background thread. Returns true when it listens to WatchService events, false when it only polls.
+    public synchronized boolean start() {
+        Path folder = path.toAbsolutePath().getParent();
+        try {
+            WatchService service = folder.getFileSystem().newWatchService();
+            folder.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            watcher = service;
+        } catch (IOException | UnsupportedOperationException e) {
+            watcher = null;
+        }
+        thread = new Thread(this::run, "ledger-tail");
+        thread.setDaemon(true);
+        thread.start();
+        return watcher != null;
+    }
+
+    private void run() {
+        while (!closed && !stopped) {
+            try {
+                WatchService service = watcher;
+                if (service != null) {
+                    WatchKey key = service.poll(pollMillis, TimeUnit.MILLISECONDS);
+                    if (key != null) {
+                        key.pollEvents();
+                        key.reset();
+                    }
+                } else {
+                    Thread.sleep(pollMillis);
+                }
+                poll();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            } catch (IOException e) {
+                // Keep tailing; a file that is being replaced can fail one round.
+                lastError = e;
+            }
+        }
+    }
+
+    /* ------------------------------------------------------------------
+       Reading new bytes
+       ------------------------------------------------------------------ */
+    //POLL-Parses whatever was appended since the last call and returns the offset consumed so far.
+    public long poll() throws IOException {
+        if (stopped) {
+            return offset;
+        }
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            // Rotated away and not created again yet.
+            return offset;
+        }
+        if (attributes.size() == offset && sameFile(attributes.fileKey())) {
+            return offset;
+        }
+        lock.lock();
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            long size = attributes.size();
+            boolean rotated = !sameFile(attributes.fileKey());
+            if (rotated || size < offset) {
+                resets++;
+                if (size > 0) {
+                    // Re-reading would append the surviving rows a second time, and the ledger can not drop rows.
+                    stopped = true;
+                    listener.stopped(rotated);
+                    return offset;
+                }
+                fileKey = attributes.fileKey();
+                offset = 0;
+                ownRecords.clear();
+                listener.reset(rotated);
+            }
+            return consume(size);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //CATCH UP-poll() for callers that can not throw; on an error the offset simply stays where it was.
+    public long catchUp() {
+        try {
+            return poll();
+        } catch (IOException e) {
+            lastError = e;
+            return offset;
+        }
+    }
+
+    private boolean sameFile(Object key) {
+        return key == null || fileKey == null || key.equals(fileKey);
+    }
+
+    // Parses the complete lines between offset and size, skipping the ones our journal wrote.
+    private long consume(long size) throws IOException {
+        int rowsBefore = ledger.size();
+        long[] lines = new long[1];
+        List<String> errors = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long end = afterLastNewline(channel, offset, size);
+            if (end > offset) {
+                if (ownRecords.isEmpty()) {
+                    load(offset, end, lines, errors);
+                } else {
+                    consumeSkippingOwn(channel, end, lines, errors);
+                }
+                offset = end;
+            }
+        }
+        int rowsAfter = ledger.size();
+        if (rowsAfter > rowsBefore || !errors.isEmpty()) {
+            rowsTailed += rowsAfter - rowsBefore;
+            listener.appended(rowsBefore, rowsAfter, lines[0], errors);
+        }
+        return offset;
+    }
+
+    // Walks the lines in [offset, end) and loads each run of other processes' lines between our own.
+    private void consumeSkippingOwn(FileChannel channel, long end, long[] lines, List<String> errors) throws IOException {
+        ByteBuffer block = ByteBuffer.allocate(64 * 1024);
+        byte[] line = new byte[256];
+        int length = 0;
+        long lineStart = offset;
+        long runStart = offset;
+        long position = offset;
+        while (position < end) {
+            block.clear().limit((int) Math.min(block.capacity(), end - position));
+            int read = channel.read(block, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                byte b = block.get(i);
+                if (b != '\n') {
+                    if (length == line.length) {
+                        line = Arrays.copyOf(line, line.length * 2);
+                    }
+                    line[length++] = b;
+                    continue;
+                }
+                long lineEnd = position + i + 1;
+                int own = ownRecord(line, length);
+                if (own != 0) {
+                    load(runStart, lineStart, lines, errors);
+                    if (own < 0) {
+                        // Our record was appended right after another writer's unfinished line.
+                        errors.add("byte " + lineStart + ": line cut off by another write");
+                    }
+                    runStart = lineEnd;
+                }
+                lineStart = lineEnd;
+                length = 0;
+            }
+            position += read;
+        }
+        load(runStart, end, lines, errors);
+    }
+
+    // 1 when the line is a record our journal committed, -1 when it ends like one but the CRC fails, 0 otherwise.
+    private int ownRecord(byte[] line, int length) {
+        int crcPipe = lastPipe(line, length);
+        int sequencePipe = crcPipe > 0 ? lastPipe(line, crcPipe) : -1;
+        if (sequencePipe < 0) {
+            return 0;
+        }
+        long sequence;
+        long crc;
+        try {
+            sequence = Long.parseLong(new String(line, sequencePipe + 1, crcPipe - sequencePipe - 1, StandardCharsets.US_ASCII));
+            crc = Long.parseLong(new String(line, crcPipe + 1, length - crcPipe - 1, StandardCharsets.US_ASCII), 16);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+        Long expected = ownRecords.get(sequence);
+        if (expected == null || expected != crc) {
+            return 0;
+        }
+        ownRecords.remove(sequence);
+        CRC32 check = new CRC32();
+        check.update(line, 0, crcPipe);
+        return check.getValue() == crc ? 1 : -1;
+    }
+
+    private static int lastPipe(byte[] line, int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (line[i] == '|') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Loads the complete lines in [from, to) into the ledger.
+    private void load(long from, long to, long[] lines, List<String> errors) throws IOException {
+        if (to <= from) {
+            return;
+        }
+        TransactionLoader.Result result = TransactionLoader.load(path, ledger, from, to, 1, 1);
+        for (String error : result.getErrors()) {
+            errors.add("after byte " + from + ", " + error);
+        }
+        lines[0] += result.getLinesRead();
+    }
+
+    // Position just past the last '\n' in [from, limit), or from when there is none.
+    private static long afterLastNewline(FileChannel channel, long from, long limit) throws IOException {
+        ByteBuffer block = ByteBuffer.allocate(8192);
+        long position = limit;
+        while (position > from) {
+            long start = Math.max(from, position - block.capacity());
+            block.clear().limit((int) (position - start));
+            while (block.hasRemaining() && channel.read(block, start + block.position()) > 0) {
+                // keep reading until the block is full
+            }
+            for (int i = block.position() - 1; i >= 0; i--) {
+                if (block.get(i) == '\n') {
+                    return start + i + 1;
+                }
+            }
+            position = start;
+        }
+        return from;
+    }
+
+    /* ------------------------------------------------------------------
+       State
+       ------------------------------------------------------------------ */
+    // Bytes of the file accounted for: parsed, skipped as our own, or rejected.
+    public long getOffset() {
+        return offset;
+    }
+
+    public long getRowsTailed() {
+        return rowsTailed;
+    }
+
+    public long getResets() {
+        return resets;
+    }
+
+    // True once a reset left lines in the file; nothing is read after that.
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    // Last error of the background thread, or null.
+    public IOException getLastError() {
+        return lastError;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        WatchService service = watcher;
+        if (service != null) {
+            service.close();
+        }
+        if (thread != null) {
+            thread.interrupt();
+            try {
+                thread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
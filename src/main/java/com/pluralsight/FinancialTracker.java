@@ -1,11 +1,32 @@
 package com.pluralsight;
 
 import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.LocalDate;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
 
 
 public class FinancialTracker {
@@ -13,8 +34,56 @@ public class FinancialTracker {
     /* ------------------------------------------------------------------
        Shared data and formatters
        ------------------------------------------------------------------ */
-    private static final ArrayList<Transaction> transactions = new ArrayList<>();
+    private static final Ledger ledger = new Ledger();
     private static final String FILE_NAME = "transactions.csv";
+    private static final int MAX_REPORTED_ERRORS = 20;
+    // Fsync policy of the journal: "always", "interval:<ms>" or "records:<n>".
+    private static final String FSYNC_POLICY = System.getProperty("tracker.fsync", "always");
+
+    // Rows per page in reports; 0 prints the whole result without stopping.
+    private static final int PAGE_SIZE = Integer.getInteger("tracker.pageSize", 0);
+
+    // Results of recent reports and custom searches; an append drops only the results it belongs to.
+    private static final QueryCache queryCache = new QueryCache(ledger,
+            Integer.getInteger("tracker.cacheEntries", 256), Long.getLong("tracker.cacheRows", 4_000_000L));
+
+    // Set by --partitions <dir>: the ledger lives in one file per month (or year) and
+    // reports load only the partitions their dates overlap, keeping a few of them resident.
+    private static PartitionStore partitions;
+    // Null unless -Dtracker.partitionBy is given: --migrate then writes months and --partitions takes what is on disk.
+    private static final String PARTITION_BY = System.getProperty("tracker.partitionBy");
+    private static final int PARTITIONS_RESIDENT = Integer.getInteger("tracker.partitionsResident", 12);
+
+    // Latency and volume of every load, append and report; shown by main menu option M and over JMX.
+    private static final Metrics metrics = new Metrics();
+
+    // Set by --tail: follows rows other processes append to the ledger file.
+    private static FileTailer tailer;
+    private static final long TAIL_POLL_MILLIS = Long.getLong("tracker.tailPollMillis", 250);
+    // Where loadTransactions stopped reading FILE_NAME; tailing starts there.
+    private static long loadedEndOffset;
+
+    // --compact sorts the file in runs of this many megabytes, so it never needs much more heap than that.
+    private static final int COMPACT_RUN_MB = Integer.getInteger("tracker.compactRunMB", 64);
+
+    private static final String SNAPSHOT_NAME = FILE_NAME + ".snapshot";
+    // A background snapshot is written once this many rows were added since the last one.
+    private static final int SNAPSHOT_EVERY = Integer.getInteger("tracker.snapshotEvery", 10_000);
+
+    private static Journal journal;
+    private static long lastSequence;
+    // Updated by every writer: the menu, the importer and, in server mode, many request threads at once.
+    private static final AtomicLong csvLines = new AtomicLong();
+    private static final AtomicInteger rowsSinceSnapshot = new AtomicInteger();
+    // Writers hold the read side while a row goes into the ledger and the journal; a snapshot takes
+    // the write side for a moment, so it never captures a row whose line is not committed yet or the other way round.
+    private static final ReentrantReadWriteLock recordLock = new ReentrantReadWriteLock();
+    private static final ExecutorService snapshotWriter = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "ledger-snapshot");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final AtomicBoolean snapshotRunning = new AtomicBoolean();
 
     private static final String DATE_PATTERN = "yyyy-MM-dd";
     private static final String TIME_PATTERN = "HH:mm:ss";
@@ -32,11 +101,88 @@ public class FinancialTracker {
        Main menu
        ------------------------------------------------------------------ */
     public static void main(String[] args) {
-        loadTransactions(FILE_NAME);
+        // --import <file> [--format ledger|csv] [--type signed|deposit|payment] runs a batch import instead of the menu.
+        // --serve <port> serves the HTTP/JSON API on localhost instead of the menu.
+        // --migrate <dir> splits transactions.csv into partition files; --partitions <dir> runs the menu on them.
+        // --tail keeps reading rows that other processes append to transactions.csv (menu or --serve).
+        // --compact [--archive-before <yyyy-MM-dd> [--archive <file>]] sorts and de-duplicates transactions.csv, then exits.
+        String importFile = null;
+        String migrateDir = null;
+        String partitionDir = null;
+        boolean tail = false;
+        boolean compact = false;
+        LocalDate archiveBefore = null;
+        String archiveFile = null;
+        int servePort = -1;
+        BatchImporter.Format importFormat = BatchImporter.Format.LEDGER;
+        BatchImporter.AmountType importType = BatchImporter.AmountType.SIGNED;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--import" -> importFile = args[++i];
+                    case "--format" -> importFormat = BatchImporter.Format.valueOf(args[++i].toUpperCase());
+                    case "--type" -> importType = BatchImporter.AmountType.valueOf(args[++i].toUpperCase());
+                    case "--serve" -> servePort = Integer.parseInt(args[++i]);
+                    case "--migrate" -> migrateDir = args[++i];
+                    case "--partitions" -> partitionDir = args[++i];
+                    case "--tail" -> tail = true;
+                    case "--compact" -> compact = true;
+                    case "--archive-before" -> archiveBefore = LocalDate.parse(args[++i], DATE_FMT);
+                    case "--archive" -> archiveFile = args[++i];
+                    default -> throw new IllegalArgumentException(args[i]);
+                }
+            }
+            if (partitionDir != null && (importFile != null || migrateDir != null || servePort >= 0)) {
+                throw new IllegalArgumentException("--partitions");
+            }
+            if (tail && (partitionDir != null || importFile != null || migrateDir != null)) {
+                throw new IllegalArgumentException("--tail");
+            }
+            if (compact && args.length != 1 + (archiveBefore != null ? 2 : 0) + (archiveFile != null ? 2 : 0)) {
+                throw new IllegalArgumentException("--compact");
+            }
+            if ((archiveBefore != null || archiveFile != null) && (!compact || archiveBefore == null)) {
+                throw new IllegalArgumentException("--archive");
+            }
+        } catch (RuntimeException e) {
+            System.err.println(RED + "Usage: FinancialTracker [--import <file> [--format ledger|csv] [--type signed|deposit|payment]] [--serve <port>]"
+                    + " [--migrate <dir>] [--tail] | --partitions <dir>"
+                    + " | --compact [--archive-before <yyyy-MM-dd> [--archive <file>]]" + DEFAULT);
+            return;
+        }
+
+        if (compact) {
+            compact(archiveBefore, archiveFile != null ? archiveFile : "transactions-before-" + archiveBefore + ".csv.gz");
+            return;
+        }
 
+        registerMetrics();
+        if (partitionDir != null) {
+            if (!openPartitions(partitionDir)) {
+                return;
+            }
+        } else {
+            openLedgerFile();
+        }
+        if (tail) {
+            startTailing();
+        }
+        if (migrateDir != null) {
+            migrate(migrateDir);
+            shutdown();
+            return;
+        }
+
+        if (servePort >= 0 && importFile == null) {
+            serve(servePort);
+            return;
+        }
         Scanner scanner = new Scanner(System.in);
 
-        boolean run = true;
+        boolean run = importFile == null;
+        if (!run) {
+            importTransactions(importFile, importFormat, importType);
+        }
         while (run) {
             System.out.println(BLUE + "╔═══════════════════════════════════════════════╗");
             System.out.println(       "║  ┏━╸╻┏┓╻┏━┓┏┓╻┏━╸╻┏━┓╻  ╺┳╸┏━┓┏━┓┏━╸╻┏ ┏━╸┏━┓ ║\n" +
@@ -47,6 +193,7 @@ public class FinancialTracker {
             System.out.println("D) Add Deposit");
             System.out.println("P) Make Payment (Debit)");
             System.out.println("L) Ledger");
+            System.out.println("M) Metrics");
             System.out.println("X) Exit");
 
             String input = scanner.nextLine().trim();
@@ -55,34 +202,331 @@ public class FinancialTracker {
                 case "D" -> addDeposit(scanner);
                 case "P" -> addPayment(scanner);
                 case "L" -> ledgerMenu(scanner);
+                case "M" -> displayMetrics();
                 case "X" -> run = false;
                 default -> System.out.println(RED + "INVALID OPTION"+ DEFAULT);
             }
         }
         scanner.close();
+        shutdown();
     }
 
+    //REGISTER METRICS-Adds the gauges and publishes the metrics over JMX.
+    private static void registerMetrics() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        metrics.gauge("ledger.rows", ledger::size);
+        metrics.gauge("ledger.heapBytes", ledger::estimatedBytes);
+        metrics.gauge("jvm.heapUsed", () -> memory.getHeapMemoryUsage().getUsed());
+        metrics.gauge("jvm.heapMax", () -> memory.getHeapMemoryUsage().getMax());
+        metrics.gauge("cache.hits", queryCache::getHits);
+        metrics.gauge("cache.misses", queryCache::getMisses);
+        metrics.gauge("cache.evictions", queryCache::getEvictions);
+        metrics.gauge("cache.invalidations", queryCache::getInvalidations);
+        // Read through the field each time: a rotation while tailing reopens the journal.
+        metrics.gauge("journal.appends", () -> journal == null ? 0 : journal.getAppends());
+        metrics.gauge("journal.commits", () -> journal == null ? 0 : journal.getCommits());
+        metrics.gauge("journal.syncs", () -> journal == null ? 0 : journal.getSyncs());
+        metrics.gauge("journal.bytesWritten", () -> journal == null ? 0 : journal.getBytesWritten());
+        metrics.gauge("journal.appendsPerSec", () -> journal == null ? 0 : Math.round(journal.getAppendsPerSecond()));
+        metrics.gauge("journal.batchSizeAvg", () -> journal == null ? 0 : Math.round(journal.getAverageBatchSize()));
+        metrics.gauge("journal.commitUsAvg", () -> journal == null ? 0 : Math.round(journal.getAverageCommitMicros()));
+        metrics.gauge("journal.commitUsMax", () -> journal == null ? 0 : Math.round(journal.getMaxCommitMicros()));
+        metrics.gauge("partitions.resident", () -> partitions == null ? 0 : partitions.getResidentCount());
+        metrics.gauge("partitions.loads", () -> partitions == null ? 0 : partitions.getLoads());
+        if (!metrics.register()) {
+            System.err.println(RED + "METRICS ARE NOT AVAILABLE OVER JMX" + DEFAULT);
+        }
+    }
 
-    //READ FILE-Loads previously saved transactions from a file into the ARRAY-LIST.
-    public static void loadTransactions(String fileName) {
+    //DISPLAY METRICS-Latency percentiles, rows scanned vs returned and bytes per operation, then the gauges.
+    private static void displayMetrics() {
+        System.out.println();
+        System.out.println(GREEN + "| METRICS |" + DEFAULT);
+        System.out.print(metrics.dump());
+    }
+
+    //OPEN LEDGER FILE-Repairs a torn tail, loads transactions.csv and opens the journal for new rows.
+    private static void openLedgerFile() {
+        try {
+            long removed = Journal.recover(Paths.get(FILE_NAME));
+            if (removed > 0) {
+                System.err.println(RED + "RECOVERED " + FILE_NAME + ": DROPPED " + removed + " BYTES OF TORN TAIL" + DEFAULT);
+            }
+        } catch (IOException e) {
+            System.err.println(RED + "ERROR RECOVERING FILE: " + FILE_NAME + DEFAULT);
+        }
+        loadTransactions(FILE_NAME);
+        try {
+            journal = Journal.open(Paths.get(FILE_NAME), Journal.FsyncPolicy.parse(FSYNC_POLICY), lastSequence + 1);
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println(RED + "ERROR OPENING FILE FOR WRITING: " + FILE_NAME + DEFAULT);
+        }
+    }
+
+    //OPEN PARTITIONS-Reads the partition footers only; rows are loaded when a report needs them.
+    private static boolean openPartitions(String directory) {
+        try {
+            partitions = PartitionStore.open(Paths.get(directory),
+                    PARTITION_BY == null ? null : PartitionStore.Granularity.parse(PARTITION_BY), PARTITIONS_RESIDENT);
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println(RED + "ERROR OPENING PARTITIONS: " + directory + " (" + e.getMessage() + ")" + DEFAULT);
+            return false;
+        }
+        if (partitions.getRepaired() > 0) {
+            System.err.println(RED + "REPAIRED " + partitions.getRepaired() + " PARTITION FILES WITH A TORN FOOTER" + DEFAULT);
+        }
+        System.out.println(GREEN + "Opened " + partitions.getPartitionCount() + " Partitions (" + partitions.getRowCount()
+                + " Transactions, Loaded When Needed)" + DEFAULT);
+        return true;
+    }
+
+    //MIGRATE-Writes the loaded ledger into partition files, one per month (or year with -Dtracker.partitionBy=year).
+    private static void migrate(String directory) {
+        long started = System.nanoTime();
+        try {
+            int written = PartitionStore.migrate(ledger, Paths.get(directory),
+                    PartitionStore.Granularity.parse(PARTITION_BY == null ? "month" : PARTITION_BY));
+            System.out.printf(GREEN + "Migrated %d Transactions Into %d Partitions In %s (%.1f s)%n" + DEFAULT,
+                    ledger.size(), written, directory, (System.nanoTime() - started) / 1e9);
+            System.out.println("Run With --partitions " + directory + " To Use Them. " + FILE_NAME + " Was Not Changed.");
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println(RED + "MIGRATION FAILED: " + directory + " (" + e.getMessage() + ")" + DEFAULT);
+        }
+    }
+
+    //COMPACT-Offline: sorts transactions.csv by date and time, drops exact duplicates and archives rows dated before
+    // archiveBefore (null keeps them all), then drops the snapshot, whose offsets point into the old file.
+    private static void compact(LocalDate archiveBefore, String archiveFile) {
+        long started = System.nanoTime();
+        Path file = Paths.get(FILE_NAME);
+        try {
+            long removed = Journal.recover(file);
+            if (removed > 0) {
+                System.err.println(RED + "RECOVERED " + FILE_NAME + ": DROPPED " + removed + " BYTES OF TORN TAIL" + DEFAULT);
+            }
+            LedgerCompactor compactor = new LedgerCompactor(file, COMPACT_RUN_MB * 1024L * 1024L,
+                    Runtime.getRuntime().availableProcessors());
+            LedgerCompactor.Result result = compactor.compact(archiveBefore, Paths.get(archiveFile));
+            if (!result.isCompacted()) {
+                System.err.println(RED + "COMPACTION STOPPED: " + FILE_NAME + " HAS BAD LINES; FIX OR REMOVE THEM FIRST" + DEFAULT);
+                for (String error : result.getErrors()) {
+                    System.err.println(RED + "  " + error + DEFAULT);
+                }
+                return;
+            }
+            Files.deleteIfExists(Paths.get(SNAPSHOT_NAME));
+            System.out.printf(GREEN + "Compacted %s: %d Rows Read, %d Duplicates Dropped, %d Archived, %d Kept (%d -> %d Bytes,"
+                            + " %d Runs, %d Merge Passes, %.1f s)%n" + DEFAULT, FILE_NAME, result.getRowsRead(),
+                    result.getDuplicates(), result.getRowsArchived(), result.getRowsKept(), result.getBytesBefore(),
+                    result.getBytesAfter(), result.getRuns(), result.getMergePasses(), (System.nanoTime() - started) / 1e9);
+            if (archiveBefore != null) {
+                System.out.println("Rows Dated Before " + archiveBefore.format(DATE_FMT) + " Were Moved To " + archiveFile);
+            }
+        } catch (NoSuchFileException e) {
+            System.err.println(RED + "FILE NOT FOUND: " + e.getMessage() + DEFAULT);
+        } catch (FileAlreadyExistsException e) {
+            System.err.println(RED + "ARCHIVE ALREADY EXISTS: " + e.getMessage() + " (Pick Another With --archive)" + DEFAULT);
+        } catch (IOException e) {
+            System.err.println(RED + "COMPACTION FAILED, " + FILE_NAME + " WAS NOT CHANGED (" + e.getMessage() + ")" + DEFAULT);
+        }
+    }
+
+    //START TAILING-Follows transactions.csv from where the load stopped; rows appended by other processes show up in reports.
+    private static void startTailing() {
+        tailer = new FileTailer(Paths.get(FILE_NAME), ledger, loadedEndOffset, recordLock.writeLock(), new FileTailer.Listener() {
+            @Override
+            public void appended(int fromRow, int toRow, long lines, List<String> errors) {
+                csvLines.addAndGet(lines);
+                rowsSinceSnapshot.addAndGet(toRow - fromRow);
+                queryCache.invalidate(fromRow, toRow);
+                for (int i = 0; i < errors.size() && i < MAX_REPORTED_ERRORS; i++) {
+                    System.err.println(RED + "SKIPPED " + FILE_NAME + " " + errors.get(i) + DEFAULT);
+                }
+            }
+
+            @Override
+            public void reset(boolean rotated) {
+                System.err.println(RED + FILE_NAME + (rotated ? " WAS REPLACED" : " WAS TRUNCATED") + ", FOLLOWING IT FROM THE START" + DEFAULT);
+                csvLines.set(0);
+                if (rotated) {
+                    reopenJournal();
+                }
+            }
+
+            @Override
+            public void stopped(boolean rotated) {
+                System.err.println(RED + FILE_NAME + (rotated ? " WAS REPLACED" : " WAS TRUNCATED") + " BUT STILL HAS ROWS;"
+                        + " STOPPED FOLLOWING IT. RESTART TO LOAD IT AS IT IS NOW" + DEFAULT);
+                if (rotated) {
+                    reopenJournal();
+                }
+            }
+        }, TAIL_POLL_MILLIS);
+        if (journal != null) {
+            journal.setCommitListener(tailer.ownWrites());
+        }
+        boolean watching = tailer.start();
+        metrics.gauge("tail.rows", tailer::getRowsTailed);
+        metrics.gauge("tail.resets", tailer::getResets);
+        System.out.println(GREEN + "Following " + FILE_NAME + (watching ? " (File Events" : " (Polling")
+                + ", Every " + TAIL_POLL_MILLIS + " ms At The Latest)" + DEFAULT);
+    }
+
+    //REOPEN JOURNAL-After a rotation our journal still appends to the old file; moves it to the new one.
+    private static void reopenJournal() {
+        if (journal == null) {
+            return;
+        }
         try {
-            BufferedReader reader = new BufferedReader(new FileReader(FILE_NAME));
-            String line;
-            while ((line =reader.readLine()) !=null) {
-                String[] tokens = line.split("\\|");
-                LocalDate date = LocalDate.parse(tokens[0]);
-                LocalTime time = LocalTime.parse(tokens[1]);
-                String description = tokens[2];
-                String vendor = tokens[3];
-                double amount = Double.parseDouble(tokens[4]);
+            long next = journal.getLastSequence() + 1;
+            journal.close();
+            journal = Journal.open(Paths.get(FILE_NAME), Journal.FsyncPolicy.parse(FSYNC_POLICY), next);
+            journal.setCommitListener(tailer.ownWrites());
+        } catch (IOException e) {
+            journal = null;
+            System.err.println(RED + "ERROR OPENING FILE FOR WRITING: " + FILE_NAME + DEFAULT);
+        }
+    }
 
-                Transaction transaction = new Transaction(date, time, description, vendor, amount);
+    //CSV OFFSET-How far the ledger covers the file, for snapshots. While tailing, catching up first makes the
+    // ledger hold exactly the lines before that offset; otherwise it is where the journal last wrote.
+    private static LongSupplier csvOffset() {
+        return tailer != null ? tailer::catchUp : journal::getEndOffset;
+    }
 
-                transactions.add(transaction);
+    //SHUTDOWN-Lets a running snapshot finish and closes the journal.
+    private static void shutdown() {
+        try {
+            if (tailer != null) {
+                tailer.close();
+            }
+        } catch (IOException e) {
+            System.err.println(RED + "Error Closing File: " + FILE_NAME + DEFAULT);
+        }
+        snapshotWriter.shutdown();
+        try {
+            snapshotWriter.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            if (journal != null) {
+                journal.close();
             }
-            reader.close();
         } catch (IOException e) {
-            System.err.println(RED + "ERROR READING FILE: " + FILE_NAME+ DEFAULT);
+            System.err.println(RED + "Error Closing File: " + FILE_NAME + DEFAULT);
+        }
+    }
+
+
+    //SERVE-Runs the HTTP/JSON API until the process is stopped (Ctrl+C); the journal is closed on the way out.
+    private static void serve(int port) {
+        LedgerServer server;
+        try {
+            server = new LedgerServer(ledger, FinancialTracker::recordTransaction, port);
+        } catch (IOException e) {
+            System.err.println(RED + "CANNOT LISTEN ON PORT " + port + " (" + e.getMessage() + ")" + DEFAULT);
+            shutdown();
+            return;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop(1);
+            shutdown();
+        }, "ledger-server-stop"));
+        server.start();
+        System.out.println(GREEN + "Serving " + ledger.size() + " Transactions On http://localhost:" + server.getPort()
+                + (server.usesVirtualThreads() ? " (Virtual Threads)" : " (Thread Pool)") + DEFAULT);
+    }
+
+    //READ FILE-Loads previously saved transactions from a file into the LEDGER.
+    // Starts from the binary snapshot when there is a valid one and only parses the lines added after it.
+    public static void loadTransactions(String fileName) {
+        Path path = Paths.get(fileName);
+        Path snapshot = Paths.get(fileName + ".snapshot");
+        TransactionLoader.Result result;
+        long started = System.nanoTime();
+        int rowsBefore = ledger.size();
+        long snapshotBytes = 0;
+        try {
+            long offset = 0;
+            long lines = 0;
+            LedgerSnapshot.Header header = ledger.size() == 0 ? LedgerSnapshot.read(snapshot, ledger, path) : null;
+            if (header != null) {
+                snapshotBytes = Files.size(snapshot);
+                offset = header.getCsvOffset();
+                lines = header.getCsvLines();
+                lastSequence = Math.max(lastSequence, header.getLastSequence());
+            }
+            result = TransactionLoader.load(path, ledger, offset, lines + 1, Runtime.getRuntime().availableProcessors());
+            csvLines.set(lines + result.getLinesRead());
+        } catch (NoSuchFileException e) {
+            return;
+        } catch (IOException e) {
+            System.err.println(RED + "ERROR READING FILE: " + fileName + DEFAULT);
+            return;
+        }
+        // Rows from the snapshot count as scanned and returned, next to the lines parsed after it.
+        Metrics.Operation load = metrics.operation("load");
+        int snapshotRows = ledger.size() - rowsBefore - result.getRowsLoaded();
+        load.rows(snapshotRows + result.getLinesRead(), ledger.size() - rowsBefore);
+        load.bytes(snapshotBytes + result.getBytesRead(), 0);
+        load.record(started);
+        lastSequence = Math.max(lastSequence, result.getLastSequence());
+        rowsSinceSnapshot.addAndGet(result.getRowsLoaded());
+        if (fileName.equals(FILE_NAME)) {
+            loadedEndOffset = result.getEndOffset();
+            snapshotIfDue(result::getEndOffset);
+        }
+        List<String> errors = result.getErrors();
+        for (int i = 0; i < errors.size() && i < MAX_REPORTED_ERRORS; i++) {
+            System.err.println(RED + "SKIPPED " + fileName + " " + errors.get(i) + DEFAULT);
+        }
+        if (errors.size() > MAX_REPORTED_ERRORS) {
+            System.err.println(RED + "... " + (errors.size() - MAX_REPORTED_ERRORS) + " MORE BAD LINES SKIPPED" + DEFAULT);
+        }
+    }
+
+    //IMPORT-Streams an external file into the ledger and prints the rows/sec summary and the reject report.
+    private static void importTransactions(String fileName, BatchImporter.Format format, BatchImporter.AmountType type) {
+        if (journal == null) {
+            System.err.println(RED + "CANNOT IMPORT: " + FILE_NAME + " IS NOT OPEN FOR WRITING" + DEFAULT);
+            return;
+        }
+        BatchImporter.Result result;
+        try {
+            result = new BatchImporter(ledger, journal, format, type).importFile(Paths.get(fileName));
+        } catch (NoSuchFileException e) {
+            System.err.println(RED + "FILE NOT FOUND: " + fileName + DEFAULT);
+            return;
+        } catch (IOException e) {
+            System.err.println(RED + "IMPORT FAILED: " + fileName + " (" + e.getMessage() + ")" + DEFAULT);
+            return;
+        }
+        csvLines.addAndGet(result.getRowsImported());
+        rowsSinceSnapshot.addAndGet((int) result.getRowsImported());
+        snapshotIfDue(csvOffset());
+
+        System.out.println(GREEN + "| IMPORT " + fileName + " |" + DEFAULT);
+        System.out.printf("Lines Read: %d | Imported: %d | Rejected: %d%n",
+                result.getLinesRead(), result.getRowsImported(), result.getRejected());
+        System.out.printf("Time: %.2f s | %.0f rows/sec%n", result.getSeconds(), result.getRowsPerSecond());
+        if (journal != null) {
+            // What the journal did for it, to tune -Dtracker.fsync for bulk ingest.
+            System.out.printf("Journal (fsync=%s): %d Appends In %d Commits (%.1f Per Commit), %d Fsyncs | %.0f appends/sec"
+                            + " | Commit Latency avg %.0f us, max %.0f us%n", journal.getPolicy(), journal.getAppends(),
+                    journal.getCommits(), journal.getAverageBatchSize(), journal.getSyncs(), journal.getAppendsPerSecond(),
+                    journal.getAverageCommitMicros(), journal.getMaxCommitMicros());
+        }
+        if (result.getRejected() > 0) {
+            System.out.println(RED + "| REJECTS |" + DEFAULT);
+            result.getRejectCounts().forEach((reason, count) -> System.out.printf("%-32s %d%n", reason, count));
+            for (String sample : result.getRejectSamples()) {
+                System.out.println(RED + "REJECTED " + sample + DEFAULT);
+            }
+            if (result.getRejected() > result.getRejectSamples().size()) {
+                System.out.println(RED + "... " + (result.getRejected() - result.getRejectSamples().size())
+                        + " MORE REJECTED LINES" + DEFAULT);
+            }
         }
     }
 
@@ -124,13 +568,13 @@ public class FinancialTracker {
         System.out.println("Enter Vendor:");
         String vendor = scanner.nextLine();
 
-        double positiveAmount = 0.0;
+        long positiveAmount = 0;
         boolean validAmount = false;
 
         while(!validAmount) {
             try {
                 System.out.println("Enter Amount :");
-                positiveAmount = Double.parseDouble(scanner.nextLine());
+                positiveAmount = Money.parseCents(scanner.nextLine().trim());
                 if (positiveAmount <= 0){
                     System.out.println(RED + "Invalid number. Enter Positive Number"+ DEFAULT);
                 } else {
@@ -141,14 +585,9 @@ public class FinancialTracker {
             }
         }
 
-        transactions.add(new Transaction(dateFormatted, timeFormatted, description, vendor, positiveAmount));
-
         try {
-            BufferedWriter writer = new BufferedWriter(new FileWriter(FILE_NAME, true));
-            writer.write(dateFormatted.format(DATE_FMT) + "|" + timeFormatted.format(TIME_FMT)+ "|" + description + "|" + vendor + "|" + String.format("%.2f", positiveAmount));
-            writer.newLine();
+            recordTransaction(dateFormatted, timeFormatted, description, vendor, positiveAmount);
             System.out.println("Deposit Saved!");
-            writer.close();
         } catch (Exception e) {
             System.err.println(RED + "Error Writing To File"+ DEFAULT);
         }
@@ -191,13 +630,13 @@ public class FinancialTracker {
         System.out.println("Enter Vendor:");
         String vendor = scanner.nextLine();
 
-        double amount = 0;
+        long amount = 0;
         boolean goodAmount = false;
 
         while(!goodAmount) {
             try {
                 System.out.println("Enter Amount (greater than 0):");
-                amount = Double.parseDouble(scanner.nextLine());
+                amount = Money.parseCents(scanner.nextLine().trim());
                 if (amount <= 0){
                     System.out.println(RED + "Invalid Number. Enter Positive."+ DEFAULT);
                 } else {
@@ -208,19 +647,90 @@ public class FinancialTracker {
             }
         }
 
-        double negativeAmount = -Math.abs(amount);
-        transactions.add(new Transaction(dateFormatted, timeFormatted, description, vendor, negativeAmount));
+        long negativeAmount = -Math.abs(amount);
         try {
-            BufferedWriter writer = new BufferedWriter(new FileWriter(FILE_NAME, true));
-            writer.write(dateFormatted.format(DATE_FMT) + "|" + timeFormatted.format(TIME_FMT)+ "|" + description + "|" + vendor + "|" + String.format("%.2f", negativeAmount));
-            writer.newLine();
+            recordTransaction(dateFormatted, timeFormatted, description, vendor, negativeAmount);
             System.out.println("Payment Recorded!");
-            writer.close();
         } catch (IOException e) {
             System.err.print(RED + "Error Writing To The File: " + FILE_NAME+ DEFAULT);
         }
     }
 
+    //RECORD-Commits one transaction to the journal, then adds it to the ledger, and returns its row id. When the commit fails
+    // the IOException leaves the ledger unchanged, so a retry does not add a second copy. Safe to call from many threads at once.
+    static int recordTransaction(LocalDate date, LocalTime time, String description, String vendor, long amountCents)
+            throws IOException {
+        long started = System.nanoTime();
+        String line = date.format(DATE_FMT) + "|" + time.format(TIME_FMT) + "|" + description + "|" + vendor + "|" + Money.format(amountCents);
+        int row;
+        if (partitions != null) {
+            row = partitions.append(date, time, description, vendor, amountCents);
+        } else {
+            recordLock.readLock().lock();
+            try {
+                // Committed first: a row that did not reach the file is never visible to queries.
+                saveLine(line);
+                row = ledger.append(date, time, description, vendor, amountCents);
+            } finally {
+                recordLock.readLock().unlock();
+            }
+            queryCache.invalidate(row);
+            rowsSinceSnapshot.incrementAndGet();
+            snapshotIfDue(csvOffset());
+        }
+        Metrics.Operation append = metrics.operation("append");
+        append.bytes(0, line.getBytes(StandardCharsets.UTF_8).length + 1);
+        append.record(started);
+        return row;
+    }
+
+    //SAVE LINE-Hands one ledger line to the journal and waits until it is committed.
+    private static void saveLine(String line) throws IOException {
+        if (journal == null) {
+            throw new IOException("Journal is not open");
+        }
+        try {
+            journal.append(line).join();
+            csvLines.incrementAndGet();
+        } catch (CompletionException e) {
+            throw new IOException("Journal append failed", e.getCause());
+        }
+    }
+
+    //SNAPSHOT-Writes a binary snapshot in the background once enough rows were added since the last one.
+    // Rows are never changed after they are appended, so the writer reads the captured columns while new rows keep coming in.
+    private static void snapshotIfDue(LongSupplier csvOffset) {
+        // Once tailing stopped on a reset the ledger no longer matches the file, so no offset into it is right.
+        if (rowsSinceSnapshot.get() < SNAPSHOT_EVERY || (tailer != null && tailer.isStopped())
+                || !snapshotRunning.compareAndSet(false, true)) {
+            return;
+        }
+        rowsSinceSnapshot.set(0);
+        Ledger.Columns columns;
+        long offset;
+        long lines;
+        long sequence;
+        recordLock.writeLock().lock();
+        try {
+            // The offset first: while tailing, reading it pulls in any external rows, which must be in the columns.
+            offset = csvOffset.getAsLong();
+            columns = ledger.columns();
+            lines = csvLines.get();
+            sequence = journal == null ? lastSequence : Math.max(lastSequence, journal.getLastSequence());
+        } finally {
+            recordLock.writeLock().unlock();
+        }
+        snapshotWriter.execute(() -> {
+            try {
+                LedgerSnapshot.write(Paths.get(SNAPSHOT_NAME), columns, Paths.get(FILE_NAME), offset, lines, sequence);
+            } catch (IOException e) {
+                System.err.println(RED + "Error Writing Snapshot: " + SNAPSHOT_NAME + DEFAULT);
+            } finally {
+                snapshotRunning.set(false);
+            }
+        });
+    }
+
     /* ------------------------------------------------------------------
        Ledger menu
        ------------------------------------------------------------------ */
@@ -239,9 +749,9 @@ public class FinancialTracker {
             String input = scanner.nextLine().trim();
 
             switch (input.toUpperCase()) {
-                case "A" -> displayLedger();
-                case "D" -> displayDeposits();
-                case "P" -> displayPayments();
+                case "A" -> displayLedger(scanner);
+                case "D" -> displayDeposits(scanner);
+                case "P" -> displayPayments(scanner);
                 case "R" -> reportsMenu(scanner);
                 case "H" -> running = false;
                 default -> System.out.println(RED + "Invalid option"+ DEFAULT);
@@ -250,62 +760,76 @@ public class FinancialTracker {
     }
 
     //DISPLAY ALL TRANSACTIONS
-    private static void displayLedger() {
+    private static void displayLedger(Scanner scanner) {
         System.out.println();
         System.out.println(GREEN + "| ALL TRANSACTIONS |" + DEFAULT);
         System.out.println("Date----------Time---------Description--------------------Vendor--------------Amount");
         System.out.println("=======================================================================================");
         try {
-            for (Transaction transaction : transactions) {
-                System.out.printf("%-12s %-10s %-30s %-20s %10.2f \n",
-                        transaction.getDate(),
-                        transaction.getTime(),
-                        transaction.getDescription(),
-                        transaction.getVendor(),
-                        transaction.getAmount());
+            Metrics.Operation report = metrics.operation("report.ledger");
+            long started = System.nanoTime();
+            ReportRenderer renderer = renderer(scanner);
+            if (partitions != null) {
+                renderQuery(renderer, report, Query.all(), null, null, null);
+            } else {
+                report.rows(ledger.size(), 0);
+                renderer.rows(ledger, 0, ledger.size());
             }
+            finishReport(report, started, renderer);
         } catch (Exception ex) {
             System.err.println(RED + "Error"+ DEFAULT);
         } }
 
 
     //DISPLAYS ONLY DEPOSITS
-    private static void displayDeposits() {
+    private static void displayDeposits(Scanner scanner) {
         System.out.println();
         System.out.println(GREEN + "| DEPOSITS |" + DEFAULT);
         System.out.println("Date----------Time---------Description--------------------Vendor--------------Amount");
         System.out.println("=======================================================================================");
 
-        for (Transaction transaction : transactions) {
-            if (transaction.getAmount() >= 0) {
-                System.out.printf("%-12s %-10s %-30s %-20s %10.2f \n",
-                        transaction.getDate(),
-                        transaction.getTime(),
-                        transaction.getDescription(),
-                        transaction.getVendor(),
-                        transaction.getAmount());
+        Metrics.Operation report = metrics.operation("report.deposits");
+        long started = System.nanoTime();
+        ReportRenderer renderer = renderer(scanner);
+        if (partitions != null) {
+            renderQuery(renderer, report, Query.amountAtLeast(0), null, null, null);
+        } else {
+            int size = ledger.size();
+            int row = 0;
+            for (; row < size; row++) {
+                if (ledger.getAmountCents(row) >= 0 && !renderer.row(ledger, row)) {
+                    break;
+                }
             }
+            report.rows(Math.min(row + 1, size), 0);
         }
+        finishReport(report, started, renderer);
     }
 
 
     // DISPLAY ONLY PAYMENTS
-    private static void displayPayments() {
+    private static void displayPayments(Scanner scanner) {
         System.out.println();
         System.out.println(GREEN + "| PAYMENTS |" + DEFAULT);
         System.out.println("Date----------Time---------Description--------------------Vendor--------------Amount");
         System.out.println("=======================================================================================");
 
-        for (Transaction transaction : transactions) {
-            if (transaction.getAmount() < 0) {
-                System.out.printf("%-12s %-10s %-30s %-20s %10.2f \n",
-                        transaction.getDate(),
-                        transaction.getTime(),
-                        transaction.getDescription(),
-                        transaction.getVendor(),
-                        transaction.getAmount());
+        Metrics.Operation report = metrics.operation("report.payments");
+        long started = System.nanoTime();
+        ReportRenderer renderer = renderer(scanner);
+        if (partitions != null) {
+            renderQuery(renderer, report, Query.amountAtMost(-1), null, null, null);
+        } else {
+            int size = ledger.size();
+            int row = 0;
+            for (; row < size; row++) {
+                if (ledger.getAmountCents(row) < 0 && !renderer.row(ledger, row)) {
+                    break;
+                }
             }
+            report.rows(Math.min(row + 1, size), 0);
         }
+        finishReport(report, started, renderer);
     }
 
     /* ------------------------------------------------------------------
@@ -323,81 +847,389 @@ public class FinancialTracker {
             System.out.println("4) Previous Year");
             System.out.println("5) Search by Vendor");
             System.out.println("6) Custom Search");
+            System.out.println("7) Search by Part of Vendor Name");
+            System.out.println("8) Balance as of Date");
+            System.out.println("9) Query Cache Stats");
+            System.out.println("T) Top Vendors by Spend");
+            System.out.println("V) Spend per Vendor per Month");
+            System.out.println("N) Largest Payments");
             System.out.println("0) Back");
 
             String input = scanner.nextLine().trim();
 
-            switch (input) {
-                case "1" -> {
-                    LocalDate start = LocalDate.now().withDayOfMonth(1);
-                    LocalDate end = LocalDate.now();
-                    filterTransactionsByDate(start, end); }
-                case "2" -> {
-                    LocalDate start = LocalDate.now().minusMonths(1).withDayOfMonth(1);
-                    LocalDate end = start.withDayOfMonth(start.lengthOfMonth());
-                    filterTransactionsByDate(start, end);
-                }
-                case "3" -> {
-                    LocalDate start = LocalDate.now().withDayOfYear(1);
-                    LocalDate end = LocalDate.now();
-                    filterTransactionsByDate(start, end);
-                }
-                case "4" -> {
-                    LocalDate start = LocalDate.now().minusYears(1).withDayOfYear(1);
-                    LocalDate end = start.withDayOfYear(start.lengthOfYear());
-                    filterTransactionsByDate(start, end);
+            switch (input.toUpperCase()) {
+                case "1", "2", "3", "4" -> {
+                    LocalDate[] range = reportRange(input);
+                    filterTransactionsByDate(scanner, range[0], range[1]);
                 }
                 case "5" -> {
                     System.out.println("Enter Vendor: ");
                     String vendor = scanner.nextLine();
-                    filterTransactionsByVendor(vendor);
+                    filterTransactionsByVendor(scanner, vendor);
                 }
                 case "6" -> customSearch(scanner);
+                case "7" -> {
+                    System.out.println("Enter Part of Vendor Name: ");
+                    String fragment = scanner.nextLine().trim();
+                    System.out.println("Match Start of Name Only? (Y/N): ");
+                    boolean prefixOnly = scanner.nextLine().trim().equalsIgnoreCase("Y");
+                    filterTransactionsByVendorFragment(scanner, fragment, prefixOnly);
+                }
+                case "8" -> {
+                    System.out.println("Enter Date (yyyy-MM-dd): ");
+                    try {
+                        displayBalanceAsOf(LocalDate.parse(scanner.nextLine().trim(), DATE_FMT));
+                    } catch (Exception e) {
+                        System.out.println(RED + "Invalid Date. Use Format (yyyy-MM-dd)" + DEFAULT);
+                    }
+                }
+                case "9" -> System.out.println(BLUE + (partitions != null ? partitions.toString() : "Query Cache: " + queryCache) + DEFAULT);
+                case "T" -> displayTopVendors(scanner);
+                case "V" -> displayVendorMonths(scanner);
+                case "N" -> displayLargestPayments(scanner);
                 case "0" -> running = false;
                 default -> System.out.println(RED + "Invalid Option"+ DEFAULT);
             }
         }
     }
 
+    //REPORT RANGE-First and last day of the reports menu periods 1 to 4, or null for any other option.
+    private static LocalDate[] reportRange(String option) {
+        LocalDate today = LocalDate.now();
+        switch (option) {
+            case "1" -> {
+                return new LocalDate[] {today.withDayOfMonth(1), today};
+            }
+            case "2" -> {
+                LocalDate start = today.minusMonths(1).withDayOfMonth(1);
+                return new LocalDate[] {start, start.withDayOfMonth(start.lengthOfMonth())};
+            }
+            case "3" -> {
+                return new LocalDate[] {today.withDayOfYear(1), today};
+            }
+            case "4" -> {
+                LocalDate start = today.minusYears(1).withDayOfYear(1);
+                return new LocalDate[] {start, start.withDayOfYear(start.lengthOfYear())};
+            }
+            default -> {
+                return null;
+            }
+        }
+    }
+
+    //CHOOSE RANGE-Asks for one of the report periods or a custom range (empty dates are open). Null when the answer is invalid.
+    private static LocalDate[] chooseRange(Scanner scanner) {
+        System.out.println("Period: 1) Month To Date  2) Previous Month  3) Year To Date  4) Previous Year  5) Custom Range");
+        String option = scanner.nextLine().trim();
+        if (!option.equals("5")) {
+            LocalDate[] range = reportRange(option);
+            if (range == null) {
+                System.out.println(RED + "Invalid Option" + DEFAULT);
+            }
+            return range;
+        }
+        try {
+            System.out.println("Start date (yyyy-MM-dd, Leave Empty for None): ");
+            String start = scanner.nextLine().trim();
+            System.out.println("Enter End date (yyyy-MM-dd, Leave Empty for None): ");
+            String end = scanner.nextLine().trim();
+            return new LocalDate[] {start.isEmpty() ? null : LocalDate.parse(start, DATE_FMT),
+                    end.isEmpty() ? null : LocalDate.parse(end, DATE_FMT)};
+        } catch (DateTimeParseException e) {
+            System.out.println(RED + "Invalid Date. Use Format (yyyy-MM-dd)" + DEFAULT);
+            return null;
+        }
+    }
+
+    //CHOOSE COUNT-Asks for how many results to show; empty takes the default. -1 when the answer is not a number.
+    private static int chooseCount(Scanner scanner, String prompt, int defaultCount) {
+        System.out.println(prompt);
+        String count = scanner.nextLine().trim();
+        try {
+            return count.isEmpty() ? defaultCount : Math.max(0, Integer.parseInt(count));
+        } catch (NumberFormatException e) {
+            System.out.println(RED + "Invalid Number" + DEFAULT);
+            return -1;
+        }
+    }
+
 
     //FILTER BY DATE
-    private static void filterTransactionsByDate(LocalDate start, LocalDate end) {
+    private static void filterTransactionsByDate(Scanner scanner, LocalDate start, LocalDate end) {
         System.out.println();
         System.out.println(GREEN + "| TRANSACTIONS BY DATE |" + DEFAULT);
         System.out.println("Date----------Time---------Description--------------------Vendor--------------Amount");
         System.out.println("=======================================================================================");
 
-        for (Transaction transaction : transactions) {
-            LocalDate date = transaction.getDate();
-            if (!date.isBefore(start) && !date.isAfter(end)){
-                System.out.printf("%-12s %-10s %-30s %-20s %10.2f \n",
-                        transaction.getDate(),
-                        transaction.getTime(),
-                        transaction.getDescription(),
-                        transaction.getVendor(),
-                        transaction.getAmount());
-            }
+        Metrics.Operation report = metrics.operation("report.date");
+        long started = System.nanoTime();
+        ReportRenderer renderer = renderer(scanner);
+        renderQuery(renderer, report, Query.dateBetween(start, end), start, end, null);
+        finishReport(report, started, renderer);
+        if (partitions == null) {
+            printTotals(ledger.getAggregates().range(start, end));
+            return;
+        }
+        try {
+            printTotals(partitions.totals(start, end));
+        } catch (IOException e) {
+            System.err.println(RED + "ERROR READING PARTITIONS (" + e.getMessage() + ")" + DEFAULT);
         }
     }
 
     //FILTER BY VENDOR
-    private static void filterTransactionsByVendor(String vendor) {
+    private static void filterTransactionsByVendor(Scanner scanner, String vendor) {
         System.out.println();
         System.out.println(GREEN + "| TRANSACTIONS BY VENDOR |" + DEFAULT);
         System.out.println("Date----------Time---------Description--------------------Vendor--------------Amount");
         System.out.println("=======================================================================================");
 
-        for (Transaction transaction : transactions) {
-            String vendor2 = transaction.getVendor();
-            if (vendor2.equalsIgnoreCase(vendor)){
-                System.out.printf("%-12s %-10s %-30s %-20s %10.2f \n",
-                        transaction.getDate(),
-                        transaction.getTime(),
-                        transaction.getDescription(),
-                        transaction.getVendor(),
-                        transaction.getAmount());
+        Metrics.Operation report = metrics.operation("report.vendor");
+        long started = System.nanoTime();
+        ReportRenderer renderer = renderer(scanner);
+        Aggregates.Totals totals = renderQuery(renderer, report, Query.vendor(vendor), null, null, rows -> rows.getAggregates().vendor(vendor));
+        finishReport(report, started, renderer);
+        if (totals != null) {
+            printTotals(totals);
+        }
+    }
+
+    //BALANCE AS OF DATE
+    private static void displayBalanceAsOf(LocalDate date) {
+        System.out.println();
+        System.out.println(GREEN + "| BALANCE AS OF " + date.format(DATE_FMT) + " |" + DEFAULT);
+        try {
+            long started = System.nanoTime();
+            long balance = partitions != null ? partitions.balanceAsOf(date) : ledger.getAggregates().balanceAsOf(date);
+            metrics.operation("report.balance").record(started);
+            System.out.println("Balance: " + Money.format(balance) + " ");
+        } catch (IOException e) {
+            System.err.println(RED + "ERROR READING PARTITIONS (" + e.getMessage() + ")" + DEFAULT);
+        }
+    }
+
+    //TOP VENDORS BY SPEND
+    private static void displayTopVendors(Scanner scanner) {
+        LocalDate[] range = chooseRange(scanner);
+        int count = range == null ? -1 : chooseCount(scanner, "How Many Vendors? (Enter for 20): ", 20);
+        if (count < 0) {
+            return;
+        }
+        System.out.println();
+        System.out.println(GREEN + "| TOP VENDORS BY SPEND |" + DEFAULT);
+        System.out.println("Rank--Vendor------------------------------Payments------------Spend");
+        System.out.println("===================================================================");
+
+        Metrics.Operation report = metrics.operation("report.topVendors");
+        long started = System.nanoTime();
+        LedgerAnalytics.VendorSpend spend = vendorSpend(range[0], range[1], false, report);
+        if (spend == null) {
+            return;
+        }
+        int[] top = spend.top(count);
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < top.length; i++) {
+            out.append(String.format("%-5d %-35s %9d %15s%n", i + 1, spend.getVendor(top[i]), spend.getPayments(top[i]),
+                    Money.format(spend.getSpendCents(top[i]))));
+        }
+        System.out.print(out);
+        report.rows(spend.getRowsScanned(), top.length);
+        report.record(started);
+    }
+
+    //SPEND PER VENDOR PER MONTH
+    private static void displayVendorMonths(Scanner scanner) {
+        LocalDate[] range = chooseRange(scanner);
+        int count = range == null ? -1 : chooseCount(scanner, "How Many Vendors per Month? (Enter for All): ", 0);
+        if (count < 0) {
+            return;
+        }
+        System.out.println();
+        System.out.println(GREEN + "| SPEND PER VENDOR PER MONTH |" + DEFAULT);
+        System.out.println("Month----Vendor------------------------------Payments------------Spend");
+        System.out.println("======================================================================");
+
+        Metrics.Operation report = metrics.operation("report.vendorMonths");
+        long started = System.nanoTime();
+        LedgerAnalytics.VendorSpend spend = vendorSpend(range[0], range[1], true, report);
+        if (spend == null) {
+            return;
+        }
+        int[] groups = spend.topPerMonth(count);
+        StringBuilder out = new StringBuilder();
+        for (int slot : groups) {
+            out.append(String.format("%-8s %-35s %9d %15s%n", spend.getMonth(slot), spend.getVendor(slot),
+                    spend.getPayments(slot), Money.format(spend.getSpendCents(slot))));
+        }
+        System.out.print(out);
+        report.rows(spend.getRowsScanned(), groups.length);
+        report.record(started);
+    }
+
+    //VENDOR SPEND-Payments per vendor (and month) from the ledger or, with --partitions, every partition overlapping start..end.
+    private static LedgerAnalytics.VendorSpend vendorSpend(LocalDate start, LocalDate end, boolean byMonth, Metrics.Operation report) {
+        LedgerAnalytics.VendorSpend spend = new LedgerAnalytics.VendorSpend(byMonth);
+        if (partitions == null) {
+            return LedgerAnalytics.spendByVendor(ledger, start, end, spend);
+        }
+        try {
+            for (PartitionStore.Partition partition : partitions.overlapping(start, end)) {
+                long loadedBefore = partitions.getBytesLoaded();
+                LedgerAnalytics.spendByVendor(partitions.ledger(partition), start, end, spend);
+                report.bytes(partitions.getBytesLoaded() - loadedBefore, 0);
+            }
+        } catch (IOException e) {
+            System.err.println(RED + "ERROR READING PARTITIONS (" + e.getMessage() + ")" + DEFAULT);
+            return null;
+        }
+        return spend;
+    }
+
+    //LARGEST PAYMENTS
+    private static void displayLargestPayments(Scanner scanner) {
+        LocalDate[] range = chooseRange(scanner);
+        int count = range == null ? -1 : chooseCount(scanner, "How Many Payments? (Enter for 20): ", 20);
+        if (count < 0) {
+            return;
+        }
+        System.out.println();
+        System.out.println(GREEN + "| LARGEST PAYMENTS |" + DEFAULT);
+        System.out.println("Date----------Time---------Description--------------------Vendor--------------Amount");
+        System.out.println("=======================================================================================");
+
+        Metrics.Operation report = metrics.operation("report.largestPayments");
+        long started = System.nanoTime();
+        Ledger rows = ledger;
+        if (partitions != null) {
+            // Each partition's largest payments go into one scratch ledger, and the largest of those are shown.
+            rows = new Ledger(false);
+            try {
+                for (PartitionStore.Partition partition : partitions.overlapping(range[0], range[1])) {
+                    long loadedBefore = partitions.getBytesLoaded();
+                    Ledger part = partitions.ledger(partition);
+                    for (int row : LedgerAnalytics.largestPayments(part, range[0], range[1], count)) {
+                        rows.append(part.getDate(row), part.getTime(row), part.getDescription(row), part.getVendor(row),
+                                part.getAmountCents(row));
+                    }
+                    report.rows(part.size(), 0);
+                    report.bytes(partitions.getBytesLoaded() - loadedBefore, 0);
+                }
+            } catch (IOException e) {
+                System.err.println(RED + "ERROR READING PARTITIONS (" + e.getMessage() + ")" + DEFAULT);
+                return;
+            }
+        }
+        int[] largest = LedgerAnalytics.largestPayments(rows, range[0], range[1], count);
+        ReportRenderer renderer = renderer(scanner);
+        renderer.rows(rows, largest);
+        finishReport(report, started, renderer);
+    }
+
+    //RENDER QUERY-Renders the rows matching the query, through the cache or, with --partitions, from each partition
+    // overlapping start..end (null is open). Returns the summed totalsOf of every ledger looked at, or null without totalsOf.
+    // Finding the rows is recorded as the "query" operation; rows scanned and bytes loaded also count for the report.
+    private static Aggregates.Totals renderQuery(ReportRenderer renderer, Metrics.Operation report, Query query,
+                                                 LocalDate start, LocalDate end, Function<Ledger, Aggregates.Totals> totalsOf) {
+        Metrics.Operation filter = metrics.operation("query");
+        if (partitions == null) {
+            long started = System.nanoTime();
+            long scannedBefore = queryCache.getRowsScanned();
+            int[] matches = queryCache.rows(query);
+            long scanned = queryCache.getRowsScanned() - scannedBefore;
+            filter.rows(scanned, matches.length);
+            filter.record(started);
+            report.rows(scanned, 0);
+            renderer.rows(ledger, matches);
+            return totalsOf == null ? null : totalsOf.apply(ledger);
+        }
+        Aggregates.Totals totals = totalsOf == null ? null : new Aggregates.Totals();
+        try {
+            for (PartitionStore.Partition partition : partitions.overlapping(start, end)) {
+                if (renderer.isStopped() && totals == null) {
+                    break;
+                }
+                long started = System.nanoTime();
+                long loadedBefore = partitions.getBytesLoaded();
+                Ledger rows = partitions.ledger(partition);
+                if (!renderer.isStopped()) {
+                    QueryPlan plan = QueryPlan.compile(rows, query);
+                    int[] matches = plan.run();
+                    long loaded = partitions.getBytesLoaded() - loadedBefore;
+                    filter.rows(plan.getCandidateRows(), matches.length);
+                    filter.bytes(loaded, 0);
+                    filter.record(started);
+                    report.rows(plan.getCandidateRows(), 0);
+                    report.bytes(loaded, 0);
+                    renderer.rows(rows, matches);
+                }
+                if (totals != null) {
+                    totals.add(totalsOf.apply(rows));
+                }
             }
+        } catch (IOException e) {
+            System.err.println(RED + "ERROR READING PARTITIONS (" + e.getMessage() + ")" + DEFAULT);
+            return null;
         }
+        return totals;
+    }
+
+    //FINISH REPORT-Flushes the report and records its latency, the rows shown and the bytes printed.
+    private static void finishReport(Metrics.Operation report, long started, ReportRenderer renderer) {
+        renderer.flush();
+        report.rows(0, renderer.getRowsShown());
+        report.bytes(0, renderer.getBytesWritten());
+        report.record(started);
+    }
+
+    //RENDERER-Report rows go through one buffered renderer; with tracker.pageSize set it pauses after every page.
+    private static ReportRenderer renderer(Scanner scanner) {
+        if (PAGE_SIZE <= 0) {
+            return new ReportRenderer(System.out, Charset.defaultCharset());
+        }
+        return new ReportRenderer(System.out, Charset.defaultCharset(), PAGE_SIZE, shown -> {
+            System.out.println(BLUE + "-- " + shown + " Rows Shown. Enter For Next " + PAGE_SIZE + ", Q To Stop --" + DEFAULT);
+            return !scanner.nextLine().trim().equalsIgnoreCase("Q");
+        });
+    }
+
+    //TOTALS FOOTER-Printed under reports, read from the running aggregates instead of re-adding the rows.
+    private static void printTotals(Aggregates.Totals totals) {
+        System.out.println("---------------------------------------------------------------------------------------");
+        System.out.println("Deposits: " + totals.getDepositCount() + "  " + Money.format(totals.getDepositCents())
+                + " | Payments: " + totals.getPaymentCount() + "  " + Money.format(totals.getPaymentCents())
+                + " | Net: " + Money.format(totals.getNetCents()) + " ");
+    }
+
+    //FILTER BY PART OF VENDOR NAME
+    private static void filterTransactionsByVendorFragment(Scanner scanner, String fragment, boolean prefixOnly) {
+        System.out.println();
+        System.out.println(GREEN + "| TRANSACTIONS BY VENDOR NAME |" + DEFAULT);
+        System.out.println("Date----------Time---------Description--------------------Vendor--------------Amount");
+        System.out.println("=======================================================================================");
+
+        Metrics.Operation report = metrics.operation("report.vendorName");
+        long started = System.nanoTime();
+        ReportRenderer renderer = renderer(scanner);
+        if (partitions == null) {
+            int[] matches = ledger.getVendorIndex().match(fragment, prefixOnly, ledger.size());
+            report.rows(matches.length, 0);
+            renderer.rows(ledger, matches);
+        } else {
+            try {
+                for (PartitionStore.Partition partition : partitions.overlapping(null, null)) {
+                    Ledger rows = partitions.ledger(partition);
+                    int[] matches = rows.getVendorIndex().match(fragment, prefixOnly, rows.size());
+                    report.rows(matches.length, 0);
+                    renderer.rows(rows, matches);
+                    if (renderer.isStopped()) {
+                        break;
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println(RED + "ERROR READING PARTITIONS (" + e.getMessage() + ")" + DEFAULT);
+            }
+        }
+        finishReport(report, started, renderer);
     }
 
     //CUSTOM SEARCH
@@ -418,11 +1250,31 @@ public class FinancialTracker {
         String vendor = scanner.nextLine();
 
         System.out.println("Amount (Leave Empty for None): ");
-        String amount = scanner.nextLine();
+        String amount = scanner.nextLine().trim();
+
+        System.out.println("Minimum Amount (Leave Empty for None): ");
+        String minAmount = scanner.nextLine().trim();
+
+        System.out.println("Maximum Amount (Leave Empty for None): ");
+        String maxAmount = scanner.nextLine().trim();
 
-        Double finalAmount = null;
-        if (!amount.isEmpty()){
-            finalAmount = Double.parseDouble(amount);
+        // Amounts are compared in exact cents, so "89.5" matches a stored -89.50 payment only as -89.5.
+        Long finalAmount = null;
+        long minCents = Long.MIN_VALUE;
+        long maxCents = Long.MAX_VALUE;
+        try {
+            if (!amount.isEmpty()){
+                finalAmount = Money.parseCents(amount);
+            }
+            if (!minAmount.isEmpty()) {
+                minCents = Money.parseCents(minAmount);
+            }
+            if (!maxAmount.isEmpty()) {
+                maxCents = Money.parseCents(maxAmount);
+            }
+        } catch (NumberFormatException e) {
+            System.out.println(RED + "Invalid Amount. Use Format (123.45)" + DEFAULT);
+            return;
         }
         LocalDate startDate = null;
         if (!stringStartDate.isEmpty()) {
@@ -437,25 +1289,46 @@ public class FinancialTracker {
         System.out.println("Date----------Time---------Description--------------------Vendor--------------Amount");
         System.out.println("=======================================================================================");
         try {
-            for (Transaction transaction : transactions) {
-                if (startDate != null && transaction.getDate().isBefore(startDate)){ continue; }
-                if (endDate != null && transaction.getDate().isAfter(endDate)) { continue; }
-                if (!description.isEmpty() && !description.equalsIgnoreCase(transaction.getDescription())) { continue; }
-                if (!vendor.isEmpty() && !vendor.equalsIgnoreCase(transaction.getVendor())) { continue; }
-                if (finalAmount != null && transaction.getAmount() != finalAmount) { continue; }
-
-                System.out.printf("%-12s %-10s %-30s %-20s %10.2f \n",
-                        transaction.getDate(),
-                        transaction.getTime(),
-                        transaction.getDescription(),
-                        transaction.getVendor(),
-                        transaction.getAmount());
-            }
+            Metrics.Operation report = metrics.operation("report.customSearch");
+            long started = System.nanoTime();
+            ReportRenderer renderer = renderer(scanner);
+            renderQuery(renderer, report, customSearchQuery(startDate, endDate, description, vendor, finalAmount, minCents, maxCents),
+                    startDate, endDate, null);
+            finishReport(report, started, renderer);
         } catch (Exception ex){
             System.err.println(RED + "Error"+ DEFAULT);
         }
     }
 
+    //CUSTOM SEARCH ROWS-Row ids matching every given filter, in row order, without the cache.
+    // Public so the benchmarks run the exact search the menu runs.
+    public static int[] customSearchRows(Ledger ledger, LocalDate startDate, LocalDate endDate, String description,
+                                         String vendor, Long amountCents, long minCents, long maxCents) {
+        return QueryPlan.compile(ledger, customSearchQuery(startDate, endDate, description, vendor, amountCents, minCents, maxCents)).run();
+    }
+
+    //CUSTOM SEARCH QUERY-The and of every given filter. Null or empty filters are ignored.
+    static Query customSearchQuery(LocalDate startDate, LocalDate endDate, String description, String vendor,
+                                   Long amountCents, long minCents, long maxCents) {
+        List<Query> filters = new ArrayList<>();
+        if (startDate != null || endDate != null) {
+            filters.add(Query.dateBetween(startDate, endDate));
+        }
+        if (description != null && !description.isEmpty()) {
+            filters.add(Query.description(description));
+        }
+        if (vendor != null && !vendor.isEmpty()) {
+            filters.add(Query.vendor(vendor));
+        }
+        if (amountCents != null) {
+            filters.add(Query.amountEquals(amountCents));
+        }
+        if (minCents != Long.MIN_VALUE || maxCents != Long.MAX_VALUE) {
+            filters.add(Query.amountBetween(minCents, maxCents));
+        }
+        return Query.and(filters);
+    }
+
     /* ------------------------------------------------------------------
        Utility parsers (you can reuse in many places)
        ------------------------------------------------------------------ */
@@ -0,0 +1,133 @@
+package com.pluralsight;
+
+import java.util.Arrays;
+
+/*
+ * Hash aggregation on primitive keys: long key -> (count, sum), for group-by reports.
+ *
+ * Open addressing with linear probing over three parallel arrays, so adding a row is a few
+ * array reads and writes with no boxing and no allocation until the table grows. A slot is
+ * free while its count is 0; every used slot has counted at least one row.
+ *
+ * Not thread safe. Parallel passes give each task its own table and merge them at the end.
+ */
+public class GroupTable {
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] keys;
+    private long[] counts;
+    private long[] sums;
+    private int size;
+    private int mask;
+
+    public GroupTable() {
+        this(MIN_CAPACITY);
+    }
+
+    public GroupTable(int expectedGroups) {
+        int capacity = Integer.highestOneBit(Math.max(MIN_CAPACITY, expectedGroups * 2 - 1)) << 1;
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        counts = new long[capacity];
+        sums = new long[capacity];
+        mask = capacity - 1;
+    }
+
+    //ADD-Counts one row with the given amount into its group.
+    public void add(long key, long amount) {
+        add(key, 1, amount);
+    }
+
+    //ADD GROUP-Folds an already counted group in, e.g. from another task's table.
+    public void add(long key, long count, long sum) {
+        int slot = slotOf(key);
+        if (counts[slot] == 0) {
+            if (size + 1 > (mask + 1) >>> 1) {
+                grow();
+                slot = slotOf(key);
+            }
+            keys[slot] = key;
+            size++;
+        }
+        counts[slot] += count;
+        sums[slot] += sum;
+    }
+
+    //MERGE-Adds every group of the other table to this one.
+    public void addAll(GroupTable other) {
+        for (int slot = 0; slot < other.counts.length; slot++) {
+            if (other.counts[slot] != 0) {
+                add(other.keys[slot], other.counts[slot], other.sums[slot]);
+            }
+        }
+    }
+
+    // The slot holding key, or the free slot where it belongs.
+    private int slotOf(long key) {
+        int slot = hash(key) & mask;
+        while (counts[slot] != 0 && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        long[] oldCounts = counts;
+        long[] oldSums = sums;
+        allocate(oldKeys.length * 2);
+        for (int slot = 0; slot < oldKeys.length; slot++) {
+            if (oldCounts[slot] != 0) {
+                int target = slotOf(oldKeys[slot]);
+                keys[target] = oldKeys[slot];
+                counts[target] = oldCounts[slot];
+                sums[target] = oldSums[slot];
+            }
+        }
+    }
+
+    /* ------------------------------------------------------------------
+       Reading
+       ------------------------------------------------------------------ */
+    public int size() {
+        return size;
+    }
+
+    //SLOTS-Slots of every group, in no particular order; read them with keyAt, countAt and sumAt.
+    public int[] slots() {
+        int[] slots = new int[size];
+        int found = 0;
+        for (int slot = 0; slot < counts.length; slot++) {
+            if (counts[slot] != 0) {
+                slots[found++] = slot;
+            }
+        }
+        return found == slots.length ? slots : Arrays.copyOf(slots, found);
+    }
+
+    //FIND-Slot of the group with this key, or -1 when there is none.
+    public int find(long key) {
+        int slot = slotOf(key);
+        return counts[slot] == 0 ? -1 : slot;
+    }
+
+    public long keyAt(int slot) {
+        return keys[slot];
+    }
+
+    public long countAt(int slot) {
+        return counts[slot];
+    }
+
+    public long sumAt(int slot) {
+        return sums[slot];
+    }
+}
@@ -0,0 +1,68 @@
+package com.pluralsight;
+
+import java.util.Arrays;
+
+/*
+ * Growable list of primitive ints, used for posting lists and other row id lists so row ids
+ * are never boxed.
+ *
+ * One thread may add while others read: a value is stored before the size that covers it is
+ * published, and a grown array is published before anything is stored past the old length.
+ */
+public class IntList {
+    private volatile int[] values;
+    private volatile int size;
+
+    public IntList() {
+        this(8);
+    }
+
+    public IntList(int capacity) {
+        values = new int[Math.max(1, capacity)];
+    }
+
+    public void add(int value) {
+        int count = size;
+        int[] current = values;
+        if (count == current.length) {
+            current = Arrays.copyOf(current, count * 2);
+            values = current;
+        }
+        current[count] = value;
+        size = count + 1;
+    }
+
+    public int get(int index) {
+        return values[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int[] toArray() {
+        int count = size;
+        return Arrays.copyOf(values, count);
+    }
+
+    // For a sorted list: the leading values that are below limit.
+    public int[] toArrayBelow(int limit) {
+        int count = size;
+        int[] current = values;
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (current[mid] < limit) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return Arrays.copyOf(current, low);
+    }
+
+    long estimatedBytes() {
+        return 16L + 16L + values.length * 4L;
+    }
+}
@@ -0,0 +1,492 @@
+package com.pluralsight;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/*
+ * Append-only journal for the ledger file.
+ *
+ * The file stays open for the life of the journal. Producers hand lines to append(), a
+ * single writer thread drains everything that is queued, writes it as one batch (group
+ * commit) and then fsyncs according to the FsyncPolicy. Each record is the usual ledger
+ * line followed by a sequence number and a CRC32 of everything before it:
+ *
+ *   date|time|description|vendor|amount|sequence|crc32
+ *
+ * recover() drops a torn last record left by a crash so the next load starts clean.
+ * A last line that only lacks its newline is kept and terminated when it is a whole record
+ * with a matching CRC, or a plain 5-field line that parses (date, time and amount) and sits
+ * before the journal's first record. Plain lines have no CRC, and after the first record a
+ * short line can only be a record torn inside its amount, so there it is always cut.
+ */
+public class Journal implements AutoCloseable {
+    private static final int MAX_BATCH = 4096;
+
+    /* ------------------------------------------------------------------
+       Fsync policy
+       ------------------------------------------------------------------ */
+    public enum SyncMode { ALWAYS, INTERVAL, RECORDS }
+
+    public static class FsyncPolicy {
+        private final SyncMode mode;
+        private final long value;
+
+        private FsyncPolicy(SyncMode mode, long value) {
+            this.mode = mode;
+            this.value = value;
+        }
+
+        // Every group commit is fsynced before its appends complete.
+        public static FsyncPolicy always() {
+            return new FsyncPolicy(SyncMode.ALWAYS, 0);
+        }
+
+        // Fsync at most every intervalMillis; appends complete once written.
+        public static FsyncPolicy everyMillis(long intervalMillis) {
+            return new FsyncPolicy(SyncMode.INTERVAL, intervalMillis);
+        }
+
+        // Fsync once this many records are unsynced; appends complete once written.
+        public static FsyncPolicy everyRecords(long records) {
+            return new FsyncPolicy(SyncMode.RECORDS, records);
+        }
+
+        //PARSE-Reads "always", "interval:<ms>" or "records:<n>".
+        public static FsyncPolicy parse(String text) {
+            String[] parts = text.trim().toLowerCase().split(":");
+            switch (parts[0]) {
+                case "always":
+                    return always();
+                case "interval":
+                    return everyMillis(Long.parseLong(parts[1]));
+                case "records":
+                    return everyRecords(Long.parseLong(parts[1]));
+                default:
+                    throw new IllegalArgumentException("Unknown fsync policy: " + text);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return mode == SyncMode.ALWAYS ? "always" : mode.name().toLowerCase() + ":" + value;
+        }
+    }
+
+    /* ------------------------------------------------------------------
+       State
+       ------------------------------------------------------------------ */
+    private static class Pending {
+        final String line;
+        final long enqueuedNanos = System.nanoTime();
+        final CompletableFuture<Long> done = new CompletableFuture<>();
+
+        Pending(String line) {
+            this.line = line;
+        }
+    }
+
+    private static final Pending STOP = new Pending("");
+
+    // Told about every record once it is in the file, before its append completes. Records are
+    // named by sequence number and CRC rather than by offset: other processes may append to the
+    // same file, so where a write landed can not be read back afterwards.
+    public interface CommitListener {
+        void committed(long sequence, long crc);
+    }
+
+    private final FileChannel channel;
+    private final FsyncPolicy policy;
+    private final LinkedBlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private final CRC32 crc = new CRC32();
+    private long[] batchCrcs = new long[64];
+    private volatile boolean closed;
+    private volatile long endOffset;
+    private volatile long lastCommittedSequence;
+    private volatile CommitListener commitListener;
+
+    private long nextSequence;
+    private long unsyncedRecords;
+    private long lastSyncNanos = System.nanoTime();
+
+    private final long openedNanos = System.nanoTime();
+    private final AtomicLong appends = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong commits = new AtomicLong();
+    private final AtomicLong syncs = new AtomicLong();
+    private final AtomicLong totalCommitNanos = new AtomicLong();
+    private final AtomicLong maxCommitNanos = new AtomicLong();
+
+    private Journal(FileChannel channel, FsyncPolicy policy, long firstSequence) throws IOException {
+        this.channel = channel;
+        this.endOffset = channel.size();
+        this.policy = policy;
+        this.nextSequence = firstSequence;
+        this.lastCommittedSequence = firstSequence - 1;
+        this.writer = new Thread(this::run, "ledger-journal");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    //OPEN-Opens the file for appending; sequence numbers continue from firstSequence.
+    public static Journal open(Path path, FsyncPolicy policy, long firstSequence) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        return new Journal(channel, policy, firstSequence);
+    }
+
+    /* ------------------------------------------------------------------
+       Recovery
+       ------------------------------------------------------------------ */
+    //RECOVER-Truncates a torn tail: a partial record after the last newline, or a last line that is not intact. Returns bytes removed.
+    public static long recover(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            long end = lastLineEnd(channel, size);
+            if (end < size && size - end < Integer.MAX_VALUE) {
+                // An unterminated last line that is still a whole record only needs its newline.
+                ByteBuffer tail = ByteBuffer.allocate((int) (size - end));
+                channel.read(tail, end);
+                byte[] line = tail.array();
+                if (isRecord(line, line.length) || (parsesAsPlain(line, line.length) && !journalStarted(channel, end))) {
+                    channel.write(ByteBuffer.wrap(new byte[] {'\n'}), size);
+                    channel.force(true);
+                    return 0;
+                }
+            }
+            if (end > 0) {
+                long start = lastLineEnd(channel, end - 1);
+                ByteBuffer line = ByteBuffer.allocate((int) (end - start));
+                channel.read(line, start);
+                int length = line.array().length - 1;
+                boolean intact = isRecord(line.array(), length)
+                        || (isPlain(line.array(), length) && !journalStarted(channel, start));
+                if (!intact) {
+                    end = start;
+                }
+            }
+            if (end < size) {
+                channel.truncate(end);
+                channel.force(true);
+            }
+            return size - end;
+        }
+    }
+
+    // Position just past the last '\n' before limit, or 0.
+    private static long lastLineEnd(FileChannel channel, long limit) throws IOException {
+        ByteBuffer block = ByteBuffer.allocate(8192);
+        long position = limit;
+        while (position > 0) {
+            long from = Math.max(0, position - block.capacity());
+            block.clear().limit((int) (position - from));
+            channel.read(block, from);
+            for (int i = block.position() - 1; i >= 0; i--) {
+                if (block.get(i) == '\n') {
+                    return from + i + 1;
+                }
+            }
+            position = from;
+        }
+        return 0;
+    }
+
+    // True when a line before limit is a journal record (6 fields); plain lines only ever come before the first one.
+    private static boolean journalStarted(FileChannel channel, long limit) throws IOException {
+        ByteBuffer block = ByteBuffer.allocate(64 * 1024);
+        int pipes = 0;
+        long position = 0;
+        while (position < limit) {
+            block.clear().limit((int) Math.min(block.capacity(), limit - position));
+            int read = channel.read(block, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                byte b = block.get(i);
+                if (b == '|') {
+                    pipes++;
+                } else if (b == '\n') {
+                    if (pipes == 6) {
+                        return true;
+                    }
+                    pipes = 0;
+                }
+            }
+            position += read;
+        }
+        return false;
+    }
+
+    // A plain 5-field ledger line (or an empty one); it carries no checksum.
+    private static boolean isPlain(byte[] line, int length) {
+        return length == 0 || pipes(line, length) == 4;
+    }
+
+    // A plain 5-field line whose date, time and amount parse the way the loader reads them.
+    private static boolean parsesAsPlain(byte[] line, int length) {
+        String[] fields = new String(line, 0, length, StandardCharsets.UTF_8).split("\\|", -1);
+        if (fields.length != 5 || (fields[1].length() != 5 && fields[1].length() != 8)) {
+            return false;
+        }
+        try {
+            LocalDate.parse(fields[0]);
+            LocalTime.parse(fields[1]);
+            Money.parseCents(fields[4]);
+            return true;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    // A journal record: 7 fields and a CRC32 that matches everything before the last '|'.
+    private static boolean isRecord(byte[] line, int length) {
+        if (pipes(line, length) != 6) {
+            return false;
+        }
+        int lastPipe = length - 1;
+        while (line[lastPipe] != '|') {
+            lastPipe--;
+        }
+        int end = line[length - 1] == '\r' ? length - 1 : length;
+        try {
+            long expected = Long.parseLong(new String(line, lastPipe + 1, end - lastPipe - 1, StandardCharsets.US_ASCII), 16);
+            CRC32 check = new CRC32();
+            check.update(line, 0, lastPipe);
+            return check.getValue() == expected;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static int pipes(byte[] line, int length) {
+        int pipes = 0;
+        for (int i = 0; i < length; i++) {
+            if (line[i] == '|') {
+                pipes++;
+            }
+        }
+        return pipes;
+    }
+
+    /* ------------------------------------------------------------------
+       Appends
+       ------------------------------------------------------------------ */
+    //APPEND-Queues one ledger line (without newline); completes with its sequence number once committed.
+    public CompletableFuture<Long> append(String line) {
+        if (closed) {
+            return CompletableFuture.failedFuture(new IOException("Journal is closed"));
+        }
+        Pending pending = new Pending(line);
+        queue.add(pending);
+        return pending.done;
+    }
+
+    private void run() {
+        List<Pending> batch = new ArrayList<>();
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        boolean stopping = false;
+        while (!stopping) {
+            try {
+                Pending first = queue.poll(pollMillis(), TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    syncIfDue(false);
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, MAX_BATCH - 1);
+                if (batch.remove(STOP)) {
+                    // Anything that raced past the closed check still gets written.
+                    queue.drainTo(batch);
+                    stopping = true;
+                }
+                buffer = commit(batch, buffer);
+                if (stopping) {
+                    syncIfDue(true);
+                }
+            } catch (InterruptedException e) {
+                stopping = true;
+            } catch (IOException e) {
+                for (Pending pending : batch) {
+                    pending.done.completeExceptionally(e);
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    private long pollMillis() {
+        return policy.mode == SyncMode.INTERVAL ? Math.max(1, policy.value) : 1000;
+    }
+
+    //GROUP COMMIT-Encodes and writes a whole batch with one write call, then fsyncs if the policy says so.
+    private ByteBuffer commit(List<Pending> batch, ByteBuffer buffer) throws IOException {
+        if (batch.isEmpty()) {
+            return buffer;
+        }
+        buffer.clear();
+        if (batchCrcs.length < batch.size()) {
+            batchCrcs = new long[Math.max(batch.size(), batchCrcs.length * 2)];
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            byte[] record = encode(batch.get(i).line, nextSequence++);
+            batchCrcs[i] = crc.getValue();
+            if (buffer.remaining() < record.length) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + record.length));
+                buffer.flip();
+                larger.put(buffer);
+                buffer = larger;
+            }
+            buffer.put(record);
+        }
+        buffer.flip();
+        int bytes = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        // With APPEND the position is the file size, which includes anything other processes appended.
+        endOffset = channel.position();
+        lastCommittedSequence = nextSequence - 1;
+        long sequence = nextSequence - batch.size();
+        CommitListener listener = commitListener;
+        if (listener != null) {
+            for (int i = 0; i < batch.size(); i++) {
+                listener.committed(sequence + i, batchCrcs[i]);
+            }
+        }
+        unsyncedRecords += batch.size();
+        syncIfDue(policy.mode == SyncMode.ALWAYS);
+
+        long now = System.nanoTime();
+        for (Pending pending : batch) {
+            long latency = now - pending.enqueuedNanos;
+            totalCommitNanos.addAndGet(latency);
+            maxCommitNanos.accumulateAndGet(latency, Math::max);
+            pending.done.complete(sequence++);
+        }
+        appends.addAndGet(batch.size());
+        bytesWritten.addAndGet(bytes);
+        commits.incrementAndGet();
+        return buffer;
+    }
+
+    private void syncIfDue(boolean force) throws IOException {
+        if (unsyncedRecords == 0) {
+            return;
+        }
+        boolean due = force
+                || (policy.mode == SyncMode.RECORDS && unsyncedRecords >= policy.value)
+                || (policy.mode == SyncMode.INTERVAL && System.nanoTime() - lastSyncNanos >= TimeUnit.MILLISECONDS.toNanos(policy.value));
+        if (due) {
+            channel.force(false);
+            unsyncedRecords = 0;
+            lastSyncNanos = System.nanoTime();
+            syncs.incrementAndGet();
+        }
+    }
+
+    private byte[] encode(String line, long sequence) {
+        byte[] body = (line + "|" + sequence).getBytes(StandardCharsets.UTF_8);
+        crc.reset();
+        crc.update(body, 0, body.length);
+        String checksum = Long.toHexString(crc.getValue());
+        byte[] record = new byte[body.length + 1 + checksum.length() + 1];
+        System.arraycopy(body, 0, record, 0, body.length);
+        record[body.length] = '|';
+        for (int i = 0; i < checksum.length(); i++) {
+            record[body.length + 1 + i] = (byte) checksum.charAt(i);
+        }
+        record[record.length - 1] = '\n';
+        return record;
+    }
+
+    //COMMIT LISTENER-Reports each committed record, e.g. so a FileTailer can skip the journal's own lines.
+    public void setCommitListener(CommitListener listener) {
+        this.commitListener = listener;
+    }
+
+    //CLOSE-Commits everything still queued, fsyncs and closes the file.
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        queue.add(STOP);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+    }
+
+    /* ------------------------------------------------------------------
+       Stats
+       ------------------------------------------------------------------ */
+    // Sequence number of the last committed record, or firstSequence - 1 before the first commit.
+    public long getLastSequence() {
+        return lastCommittedSequence;
+    }
+
+    // File size after the last committed batch.
+    public long getEndOffset() {
+        return endOffset;
+    }
+
+    public FsyncPolicy getPolicy() {
+        return policy;
+    }
+
+    public long getAppends() {
+        return appends.get();
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    public long getCommits() {
+        return commits.get();
+    }
+
+    public long getSyncs() {
+        return syncs.get();
+    }
+
+    public double getAppendsPerSecond() {
+        double seconds = (System.nanoTime() - openedNanos) / 1e9;
+        return seconds <= 0 ? 0 : appends.get() / seconds;
+    }
+
+    // Average time from append() to the record being committed, in microseconds.
+    public double getAverageCommitMicros() {
+        long count = appends.get();
+        return count == 0 ? 0 : totalCommitNanos.get() / 1e3 / count;
+    }
+
+    public double getMaxCommitMicros() {
+        return maxCommitNanos.get() / 1e3;
+    }
+
+    public double getAverageBatchSize() {
+        long count = commits.get();
+        return count == 0 ? 0 : (double) appends.get() / count;
+    }
+}
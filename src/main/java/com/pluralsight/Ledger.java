@@ -0,0 +1,317 @@
+package com.pluralsight;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * Columnar store for the ledger. Instead of one Transaction object per row, every field is
+ * kept in its own flat primitive array and rows are addressed by their position (row id):
+ *
+ *   dates        epoch day                     int[]
+ *   times        second of day                 int[]
+ *   amounts      cents                         long[]
+ *   descriptions id into the string table      int[]
+ *   vendors      id into the string table      int[]
+ *
+ * Rows are only ever appended, so a row id stays valid for the life of the ledger. Every
+ * append also updates the DateIndex, which keeps the row ids in date and time order, and
+ * the vendor and description TextIndexes, which map case-folded values to their rows, and
+ * the running Aggregates used for report totals.
+ *
+ * The ledger is safe for many concurrent writers and readers. Writers take a short lock;
+ * readers never lock and work on the last published view (see size()). Index lookups can
+ * return row ids a little newer than a reader's view, so queries drop ids >= size().
+ */
+public class Ledger {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final StringTable strings = new StringTable();
+
+    // Writer-side columns. Only touched while holding appendLock.
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private int size;
+    private int[] dates = new int[INITIAL_CAPACITY];
+    private int[] times = new int[INITIAL_CAPACITY];
+    private long[] amounts = new long[INITIAL_CAPACITY];
+    private int[] descriptions = new int[INITIAL_CAPACITY];
+    private int[] vendors = new int[INITIAL_CAPACITY];
+
+    // Reader-side view, replaced after every append. Rows below its size are fully written
+    // and never change, so readers need no lock and never see a half-written row.
+    private volatile State published = new State(0, dates, times, amounts, descriptions, vendors);
+
+    // Null for scratch ledgers (e.g. the loader's per-range ledgers) that are never queried.
+    private final DateIndex dateIndex;
+    private final TextIndex vendorIndex;
+    private final TextIndex descriptionIndex;
+    private final Aggregates aggregates;
+
+    private static final class State {
+        final int size;
+        final int[] dates;
+        final int[] times;
+        final long[] amounts;
+        final int[] descriptions;
+        final int[] vendors;
+
+        State(int size, int[] dates, int[] times, long[] amounts, int[] descriptions, int[] vendors) {
+            this.size = size;
+            this.dates = dates;
+            this.times = times;
+            this.amounts = amounts;
+            this.descriptions = descriptions;
+            this.vendors = vendors;
+        }
+    }
+
+    public Ledger() {
+        this(true);
+    }
+
+    Ledger(boolean indexed) {
+        this.dateIndex = indexed ? new DateIndex() : null;
+        this.vendorIndex = indexed ? new TextIndex(true) : null;
+        this.descriptionIndex = indexed ? new TextIndex(false) : null;
+        this.aggregates = indexed ? new Aggregates() : null;
+    }
+
+    /* ------------------------------------------------------------------
+       Appends
+       ------------------------------------------------------------------ */
+    // Appends are serialized on one lock; they are short (a few array stores plus index
+    // updates) and readers never take it.
+    public int append(LocalDate date, LocalTime time, String description, String vendor, long amountCents) {
+        appendLock.lock();
+        try {
+            return appendRow((int) date.toEpochDay(), time.toSecondOfDay(), strings.intern(description), strings.intern(vendor), amountCents);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    //APPEND ROW-Stores one row from already encoded values and returns its row id.
+    int append(int epochDay, int secondOfDay, int descriptionId, int vendorId, long amountCents) {
+        appendLock.lock();
+        try {
+            return appendRow(epochDay, secondOfDay, descriptionId, vendorId, amountCents);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    private int appendRow(int epochDay, int secondOfDay, int descriptionId, int vendorId, long amountCents) {
+        ensureCapacity(size + 1);
+        int row = size;
+        dates[row] = epochDay;
+        times[row] = secondOfDay;
+        descriptions[row] = descriptionId;
+        vendors[row] = vendorId;
+        amounts[row] = amountCents;
+        if (dateIndex != null) {
+            dateIndex.add(row, epochDay, secondOfDay);
+            vendorIndex.add(row, vendorId, strings);
+            descriptionIndex.add(row, descriptionId, strings);
+            aggregates.add(epochDay, vendorId, amountCents, strings);
+        }
+        size++;
+        publish();
+        return row;
+    }
+
+    //APPEND ALL-Copies every row of another ledger onto the end of this one, re-mapping its string ids.
+    public void appendAll(Ledger other) {
+        State rows = other.published;
+        appendLock.lock();
+        try {
+            int[] remap = new int[other.strings.size()];
+            for (int id = 0; id < remap.length; id++) {
+                remap[id] = strings.intern(other.strings.get(id));
+            }
+            ensureCapacity(size + rows.size);
+            System.arraycopy(rows.dates, 0, dates, size, rows.size);
+            System.arraycopy(rows.times, 0, times, size, rows.size);
+            System.arraycopy(rows.amounts, 0, amounts, size, rows.size);
+            for (int row = 0; row < rows.size; row++) {
+                descriptions[size + row] = remap[rows.descriptions[row]];
+                vendors[size + row] = remap[rows.vendors[row]];
+            }
+            int firstRow = size;
+            size += rows.size;
+            indexRows(firstRow);
+            publish();
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    //RESTORE-Fills an empty ledger from saved columns and rebuilds the indexes in one pass.
+    void restore(Columns columns) {
+        appendLock.lock();
+        try {
+            if (size != 0 || strings.size() != 0) {
+                throw new IllegalStateException("Ledger is not empty");
+            }
+            for (int id = 0; id < columns.stringCount; id++) {
+                strings.intern(columns.strings[id]);
+            }
+            dates = columns.dates;
+            times = columns.times;
+            amounts = columns.amounts;
+            descriptions = columns.descriptions;
+            vendors = columns.vendors;
+            size = columns.size;
+            indexRows(0);
+            publish();
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    private void indexRows(int firstRow) {
+        if (dateIndex == null) {
+            return;
+        }
+        dateIndex.addAll(dates, times, firstRow, size);
+        for (int row = firstRow; row < size; row++) {
+            vendorIndex.add(row, vendors[row], strings);
+            descriptionIndex.add(row, descriptions[row], strings);
+            aggregates.add(dates[row], vendors[row], amounts[row], strings);
+        }
+    }
+
+    private void publish() {
+        published = new State(size, dates, times, amounts, descriptions, vendors);
+    }
+
+    private void ensureCapacity(int needed) {
+        if (needed <= dates.length) {
+            return;
+        }
+        // Fresh arrays, so readers holding the old ones are not affected.
+        int capacity = Math.max(needed, dates.length + (dates.length >> 1));
+        dates = Arrays.copyOf(dates, capacity);
+        times = Arrays.copyOf(times, capacity);
+        amounts = Arrays.copyOf(amounts, capacity);
+        descriptions = Arrays.copyOf(descriptions, capacity);
+        vendors = Arrays.copyOf(vendors, capacity);
+    }
+
+    /* ------------------------------------------------------------------
+       Row access, same shape as the Transaction getters
+       ------------------------------------------------------------------ */
+    // Rows visible to readers. Take it once at the start of a query and ignore any row id at
+    // or above it, so the whole query sees one point in time.
+    public int size() {
+        return published.size;
+    }
+
+    public LocalDate getDate(int row) {
+        return LocalDate.ofEpochDay(published.dates[row]);
+    }
+
+    public LocalTime getTime(int row) {
+        return LocalTime.ofSecondOfDay(published.times[row]);
+    }
+
+    public String getDescription(int row) {
+        return strings.get(published.descriptions[row]);
+    }
+
+    public String getVendor(int row) {
+        return strings.get(published.vendors[row]);
+    }
+
+    public Transaction get(int row) {
+        return new Transaction(getDate(row), getTime(row), getDescription(row), getVendor(row), getAmountCents(row));
+    }
+
+    /* ------------------------------------------------------------------
+       Raw column access for scans
+       ------------------------------------------------------------------ */
+    public int getEpochDay(int row) {
+        return published.dates[row];
+    }
+
+    public int getSecondOfDay(int row) {
+        return published.times[row];
+    }
+
+    public long getAmountCents(int row) {
+        return published.amounts[row];
+    }
+
+    public int getDescriptionId(int row) {
+        return published.descriptions[row];
+    }
+
+    public int getVendorId(int row) {
+        return published.vendors[row];
+    }
+
+    public DateIndex getDateIndex() {
+        return dateIndex;
+    }
+
+    public TextIndex getVendorIndex() {
+        return vendorIndex;
+    }
+
+    public TextIndex getDescriptionIndex() {
+        return descriptionIndex;
+    }
+
+    public Aggregates getAggregates() {
+        return aggregates;
+    }
+
+    public StringTable getStrings() {
+        return strings;
+    }
+
+    /* ------------------------------------------------------------------
+       Column view
+       ------------------------------------------------------------------ */
+    // The first size rows of every column plus the string table, for bulk copies such as
+    // snapshots. Like any reader it can be used from another thread while appends continue.
+    static class Columns {
+        final int size;
+        final int[] dates;
+        final int[] times;
+        final long[] amounts;
+        final int[] descriptions;
+        final int[] vendors;
+        final String[] strings;
+        final int stringCount;
+
+        Columns(int size, int[] dates, int[] times, long[] amounts, int[] descriptions, int[] vendors,
+                String[] strings, int stringCount) {
+            this.size = size;
+            this.dates = dates;
+            this.times = times;
+            this.amounts = amounts;
+            this.descriptions = descriptions;
+            this.vendors = vendors;
+            this.strings = strings;
+            this.stringCount = stringCount;
+        }
+    }
+
+    Columns columns() {
+        State state = published;
+        // Size before array: the array read afterwards is at least as new, so it holds every counted string.
+        int stringCount = strings.size();
+        return new Columns(state.size, state.dates, state.times, state.amounts, state.descriptions, state.vendors,
+                strings.values(), stringCount);
+    }
+
+    // Approximate heap held by the columns, the indexes and the string table.
+    public long estimatedBytes() {
+        long columns = 5 * 16L + published.dates.length * (4L + 4L + 8L + 4L + 4L);
+        long index = dateIndex == null ? 0
+                : dateIndex.estimatedBytes() + vendorIndex.estimatedBytes() + descriptionIndex.estimatedBytes()
+                + aggregates.estimatedBytes();
+        return columns + index + strings.estimatedBytes();
+    }
+}
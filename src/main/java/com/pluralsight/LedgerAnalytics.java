@@ -0,0 +1,333 @@
+package com.pluralsight;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/*
+ * Group-by and top-K reports over a date range, each computed in one pass over the rows.
+ *
+ *   spend by vendor            payments per vendor (and per month), summed into a GroupTable
+ *                              keyed on the vendor's string id, so the pass never boxes or
+ *                              folds a name; names are case-folded once per group afterwards.
+ *   largest payments           the n largest payments, kept in a TopK heap of row ids.
+ *
+ * The rows come from the DateIndex when the range holds at most INDEX_FRACTION of the ledger,
+ * otherwise every row is scanned and checked against the range. Once there are at least
+ * PARALLEL_MIN_ROWS of them, the pass is split across the common ForkJoin pool: each task
+ * fills its own GroupTable or TopK and the partial results are merged as the tasks join, so
+ * no two threads ever write to the same table.
+ */
+public class LedgerAnalytics {
+    private static final double INDEX_FRACTION = 0.25;
+    private static final int PARALLEL_MIN_ROWS = 1 << 16;
+    private static final int CHUNK_ROWS = 1 << 14;
+
+    /* ------------------------------------------------------------------
+       Spend by vendor (and month)
+       ------------------------------------------------------------------ */
+    // Payment count and spend (cents, positive) per case-folded vendor, or per vendor and month.
+    public static class VendorSpend {
+        private final boolean byMonth;
+        private final StringTable folded = new StringTable();
+        private String[] names = new String[64]; // spelling first seen for each folded name
+        private final GroupTable groups = new GroupTable();
+        private long rowsScanned;
+
+        public VendorSpend(boolean byMonth) {
+            this.byMonth = byMonth;
+        }
+
+        // Folds one ledger's groups (keyed on its own vendor string ids) into the named groups.
+        void addAll(Ledger ledger, GroupTable raw, long scanned) {
+            StringTable strings = ledger.getStrings();
+            // Vendor string id -> name id (held in the sum), so each vendor is folded once and not once per month.
+            GroupTable nameOfVendor = new GroupTable();
+            for (int slot : raw.slots()) {
+                long key = raw.keyAt(slot);
+                int vendorId = (int) (byMonth ? key >>> 32 : key);
+                int known = nameOfVendor.find(vendorId);
+                int nameId;
+                if (known >= 0) {
+                    nameId = (int) nameOfVendor.sumAt(known);
+                } else {
+                    nameId = nameId(strings.get(vendorId));
+                    nameOfVendor.add(vendorId, nameId);
+                }
+                long group = byMonth ? (long) nameId << 32 | (key & 0xFFFFFFFFL) : nameId;
+                groups.add(group, raw.countAt(slot), raw.sumAt(slot));
+            }
+            rowsScanned += scanned;
+        }
+
+        private int nameId(String vendor) {
+            int nameId = folded.intern(TextIndex.fold(vendor));
+            if (nameId >= names.length) {
+                names = Arrays.copyOf(names, names.length * 2);
+            }
+            if (names[nameId] == null) {
+                names[nameId] = vendor;
+            }
+            return nameId;
+        }
+
+        //TOP-Slots of the k groups with the most spend, most first. k <= 0 returns every group.
+        public int[] top(int k) {
+            int[] slots = groups.slots();
+            TopK best = new TopK(k <= 0 ? slots.length : Math.min(k, slots.length));
+            for (int slot : slots) {
+                best.offer(groups.sumAt(slot), slot);
+            }
+            return best.ids();
+        }
+
+        //TOP PER MONTH-Slots ordered by month, then by spend; at most k per month (k <= 0 keeps all).
+        public int[] topPerMonth(int k) {
+            int[] bySpend = top(0);
+            if (bySpend.length == 0) {
+                return bySpend;
+            }
+            int minMonth = Integer.MAX_VALUE;
+            int maxMonth = Integer.MIN_VALUE;
+            for (int slot : bySpend) {
+                minMonth = Math.min(minMonth, month(slot));
+                maxMonth = Math.max(maxMonth, month(slot));
+            }
+            // Counting sort by month keeps the spend order inside each month.
+            int[] starts = new int[maxMonth - minMonth + 2];
+            for (int slot : bySpend) {
+                starts[month(slot) - minMonth + 1]++;
+            }
+            for (int i = 1; i < starts.length; i++) {
+                starts[i] += starts[i - 1];
+            }
+            int[] ordered = new int[bySpend.length];
+            int[] next = Arrays.copyOf(starts, starts.length);
+            for (int slot : bySpend) {
+                ordered[next[month(slot) - minMonth]++] = slot;
+            }
+            if (k <= 0) {
+                return ordered;
+            }
+            int[] kept = new int[ordered.length];
+            int found = 0;
+            for (int i = 0; i + 1 < starts.length; i++) {
+                for (int j = starts[i]; j < starts[i + 1] && j < starts[i] + k; j++) {
+                    kept[found++] = ordered[j];
+                }
+            }
+            return Arrays.copyOf(kept, found);
+        }
+
+        private int month(int slot) {
+            return (int) groups.keyAt(slot);
+        }
+
+        public int size() {
+            return groups.size();
+        }
+
+        public String getVendor(int slot) {
+            return names[(int) (byMonth ? groups.keyAt(slot) >>> 32 : groups.keyAt(slot))];
+        }
+
+        // Only for results grouped by month.
+        public YearMonth getMonth(int slot) {
+            int month = month(slot);
+            return YearMonth.of(Math.floorDiv(month, 12), Math.floorMod(month, 12) + 1);
+        }
+
+        public long getPayments(int slot) {
+            return groups.countAt(slot);
+        }
+
+        public long getSpendCents(int slot) {
+            return groups.sumAt(slot);
+        }
+
+        // Rows the passes looked at, across every ledger added.
+        public long getRowsScanned() {
+            return rowsScanned;
+        }
+    }
+
+    //SPEND BY VENDOR-Adds the payments dated between start and end (null is open) to the result, in one pass.
+    public static VendorSpend spendByVendor(Ledger ledger, LocalDate start, LocalDate end, VendorSpend into) {
+        Rows rows = new Rows(ledger, start, end);
+        GroupTable raw = run(new SpendPass(rows, into.byMonth, 0, rows.count));
+        into.addAll(ledger, raw, rows.count);
+        return into;
+    }
+
+    //LARGEST PAYMENTS-Row ids of the n largest payments dated between start and end (null is open), largest first.
+    public static int[] largestPayments(Ledger ledger, LocalDate start, LocalDate end, int n) {
+        Rows rows = new Rows(ledger, start, end);
+        return run(new LargestPass(rows, Math.min(n, rows.count), 0, rows.count)).ids();
+    }
+
+    /* ------------------------------------------------------------------
+       The pass
+       ------------------------------------------------------------------ */
+    // The rows a pass walks: candidates from the date index, or every row (candidates null).
+    private static final class Rows {
+        final Ledger.Columns columns;
+        final int startDay;
+        final int endDay;
+        final int[] candidates;
+        final int count;
+
+        Rows(Ledger ledger, LocalDate start, LocalDate end) {
+            columns = ledger.columns();
+            startDay = start == null ? Query.MIN_DAY : (int) start.toEpochDay();
+            endDay = end == null ? Query.MAX_DAY : (int) end.toEpochDay();
+            DateIndex index = ledger.getDateIndex();
+            if (index != null && index.count(startDay, endDay) <= columns.size * INDEX_FRACTION) {
+                candidates = index.range(startDay, endDay, columns.size);
+            } else {
+                candidates = null;
+            }
+            count = candidates == null ? columns.size : candidates.length;
+        }
+
+        int row(int i) {
+            return candidates == null ? i : candidates[i];
+        }
+    }
+
+    private static <T> T run(Pass<T> pass) {
+        if (pass.to - pass.from >= PARALLEL_MIN_ROWS && ForkJoinPool.getCommonPoolParallelism() > 1) {
+            return ForkJoinPool.commonPool().invoke(pass);
+        }
+        return pass.scan();
+    }
+
+    // Scans rows [from, to) of its Rows into a fresh partial result, splitting in two while there is more than a chunk.
+    private abstract static class Pass<T> extends RecursiveTask<T> {
+        private static final long serialVersionUID = 1L;
+
+        final Rows rows;
+        final int from;
+        final int to;
+
+        Pass(Rows rows, int from, int to) {
+            this.rows = rows;
+            this.from = from;
+            this.to = to;
+        }
+
+        abstract T scan();
+
+        abstract Pass<T> slice(int from, int to);
+
+        abstract T merge(T left, T right);
+
+        @Override
+        protected T compute() {
+            if (to - from <= CHUNK_ROWS) {
+                return scan();
+            }
+            int chunks = (to - from + CHUNK_ROWS - 1) / CHUNK_ROWS;
+            int middle = from + (chunks / 2) * CHUNK_ROWS;
+            Pass<T> left = slice(from, middle);
+            left.fork();
+            T right = slice(middle, to).compute();
+            return merge(left.join(), right);
+        }
+    }
+
+    private static final class SpendPass extends Pass<GroupTable> {
+        private static final long serialVersionUID = 1L;
+
+        private final boolean byMonth;
+
+        SpendPass(Rows rows, boolean byMonth, int from, int to) {
+            super(rows, from, to);
+            this.byMonth = byMonth;
+        }
+
+        @Override
+        GroupTable scan() {
+            int[] dates = rows.columns.dates;
+            long[] amounts = rows.columns.amounts;
+            int[] vendors = rows.columns.vendors;
+            GroupTable groups = new GroupTable();
+            // Rows mostly come in date order, so the month is only worked out when the day changes.
+            int lastDay = Integer.MIN_VALUE;
+            long lastMonth = 0;
+            for (int i = from; i < to; i++) {
+                int row = rows.row(i);
+                long amount = amounts[row];
+                int day = dates[row];
+                if (amount >= 0 || day < rows.startDay || day > rows.endDay) {
+                    continue;
+                }
+                long key = vendors[row];
+                if (byMonth) {
+                    if (day != lastDay) {
+                        LocalDate date = LocalDate.ofEpochDay(day);
+                        lastDay = day;
+                        lastMonth = (date.getYear() * 12L + date.getMonthValue() - 1) & 0xFFFFFFFFL;
+                    }
+                    key = key << 32 | lastMonth;
+                }
+                groups.add(key, -amount);
+            }
+            return groups;
+        }
+
+        @Override
+        Pass<GroupTable> slice(int from, int to) {
+            return new SpendPass(rows, byMonth, from, to);
+        }
+
+        @Override
+        GroupTable merge(GroupTable left, GroupTable right) {
+            if (left.size() < right.size()) {
+                right.addAll(left);
+                return right;
+            }
+            left.addAll(right);
+            return left;
+        }
+    }
+
+    private static final class LargestPass extends Pass<TopK> {
+        private static final long serialVersionUID = 1L;
+
+        private final int n;
+
+        LargestPass(Rows rows, int n, int from, int to) {
+            super(rows, from, to);
+            this.n = n;
+        }
+
+        @Override
+        TopK scan() {
+            int[] dates = rows.columns.dates;
+            long[] amounts = rows.columns.amounts;
+            TopK largest = new TopK(n);
+            for (int i = from; i < to; i++) {
+                int row = rows.row(i);
+                long amount = amounts[row];
+                int day = dates[row];
+                if (amount < 0 && day >= rows.startDay && day <= rows.endDay) {
+                    largest.offer(-amount, row);
+                }
+            }
+            return largest;
+        }
+
+        @Override
+        Pass<TopK> slice(int from, int to) {
+            return new LargestPass(rows, n, from, to);
+        }
+
+        @Override
+        TopK merge(TopK left, TopK right) {
+            left.addAll(right);
+            return left;
+        }
+    }
+}
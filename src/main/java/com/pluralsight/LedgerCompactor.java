@@ -0,0 +1,370 @@
+package com.pluralsight;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/*
+ * Offline compaction of the ledger file: sorts it by date and time, drops exact duplicates
+ * and, optionally, moves the rows dated before a cutoff into a gzip archive.
+ *
+ * The file can be far larger than the heap. It is sorted with an external merge sort:
+ *
+ *   runs    the file is parsed runBytes at a time by the TransactionLoader (so bad lines and
+ *           checksums are checked exactly as on a normal load) into a scratch ledger, whose
+ *           rows are sorted, de-duplicated and written to a temporary run file.
+ *   merge   the runs are merged, at most MAX_FAN_IN at a time, keeping only one line in
+ *           memory per run. Duplicates that landed in different runs meet here and are
+ *           dropped too. More runs than MAX_FAN_IN take extra passes through merged runs.
+ *
+ * Rows are ordered by their line text, which starts with the fixed-width date and time, so
+ * the order is chronological; rows at the same second come out in text order. Journal
+ * records lose their sequence number and checksum and are written as plain ledger lines.
+ *
+ * Nothing is changed until the end: the archive and the new ledger are written to temporary
+ * files, forced to disk and then moved into place, the archive first. A file with bad lines
+ * is not compacted at all, since their text can not be carried over.
+ */
+public class LedgerCompactor {
+    private static final int MAX_FAN_IN = 64;
+    private static final int MAX_REPORTED_ERRORS = 20;
+    private static final int IO_BUFFER_CHARS = 64 * 1024;
+
+    /* ------------------------------------------------------------------
+       Result
+       ------------------------------------------------------------------ */
+    public static class Result {
+        private long rowsRead;
+        private long duplicates;
+        private long rowsArchived;
+        private long rowsKept;
+        private int runs;
+        private int mergePasses;
+        private long bytesBefore;
+        private long bytesAfter;
+        private final List<String> errors = new ArrayList<>();
+
+        public long getRowsRead() {
+            return rowsRead;
+        }
+
+        public long getDuplicates() {
+            return duplicates;
+        }
+
+        public long getRowsArchived() {
+            return rowsArchived;
+        }
+
+        public long getRowsKept() {
+            return rowsKept;
+        }
+
+        // Sorted runs spilled to temporary files.
+        public int getRuns() {
+            return runs;
+        }
+
+        public int getMergePasses() {
+            return mergePasses;
+        }
+
+        public long getBytesBefore() {
+            return bytesBefore;
+        }
+
+        public long getBytesAfter() {
+            return bytesAfter;
+        }
+
+        // Bad lines found while reading (at most MAX_REPORTED_ERRORS). The file is left as it was when there are any.
+        public List<String> getErrors() {
+            return errors;
+        }
+
+        public boolean isCompacted() {
+            return errors.isEmpty();
+        }
+    }
+
+    private final Path ledgerFile;
+    private final long runBytes;
+    private final int threads;
+
+    public LedgerCompactor(Path ledgerFile, long runBytes, int threads) {
+        this.ledgerFile = ledgerFile;
+        this.runBytes = Math.max(1, runBytes);
+        this.threads = Math.max(1, threads);
+    }
+
+    //COMPACT-Sorts and de-duplicates the ledger file; rows dated before archiveBefore (null for none) go into archive.
+    public Result compact(LocalDate archiveBefore, Path archive) throws IOException {
+        if (archiveBefore != null && Files.exists(archive)) {
+            throw new FileAlreadyExistsException(archive.toString());
+        }
+        Result result = new Result();
+        result.bytesBefore = Files.size(ledgerFile);
+        Path folder = ledgerFile.toAbsolutePath().getParent();
+        Path work = Files.createTempDirectory(folder, "compact-");
+        try {
+            List<Path> runs = writeRuns(work, result);
+            if (!result.isCompacted()) {
+                return result;
+            }
+            result.runs = runs.size();
+            while (runs.size() > MAX_FAN_IN) {
+                List<Path> merged = new ArrayList<>();
+                for (int i = 0; i < runs.size(); i += MAX_FAN_IN) {
+                    List<Path> group = runs.subList(i, Math.min(runs.size(), i + MAX_FAN_IN));
+                    Path run = work.resolve("pass" + result.mergePasses + "-" + merged.size() + ".run");
+                    try (Writer out = writer(Files.newOutputStream(run))) {
+                        merge(group, out, null, null, result);
+                    }
+                    for (Path done : group) {
+                        Files.delete(done);
+                    }
+                    merged.add(run);
+                }
+                runs = merged;
+                result.mergePasses++;
+            }
+            result.mergePasses++;
+            finish(runs, work, archiveBefore, archive, result);
+            return result;
+        } finally {
+            deleteTree(work);
+        }
+    }
+
+    /* ------------------------------------------------------------------
+       Runs
+       ------------------------------------------------------------------ */
+    // Parses the file runBytes at a time and writes each piece as a sorted, de-duplicated run.
+    private List<Path> writeRuns(Path work, Result result) throws IOException {
+        List<Path> runs = new ArrayList<>();
+        long size = result.bytesBefore;
+        long offset = 0;
+        long line = 1;
+        try (FileChannel channel = FileChannel.open(ledgerFile, StandardOpenOption.READ)) {
+            while (offset < size) {
+                long end = lineStartAfter(channel, Math.min(size, offset + runBytes), size);
+                Ledger rows = new Ledger(false);
+                TransactionLoader.Result loaded = TransactionLoader.load(ledgerFile, rows, offset, end, line, threads);
+                for (String error : loaded.getErrors()) {
+                    if (result.errors.size() < MAX_REPORTED_ERRORS) {
+                        result.errors.add(error);
+                    }
+                }
+                result.rowsRead += rows.size();
+                line += loaded.getLinesRead();
+                offset = end;
+                if (result.errors.isEmpty() && rows.size() > 0) {
+                    Path run = work.resolve("run" + runs.size() + ".run");
+                    try (Writer out = writer(Files.newOutputStream(run))) {
+                        result.duplicates += writeSorted(rows, out);
+                    }
+                    runs.add(run);
+                }
+            }
+        }
+        return runs;
+    }
+
+    // Position just past the first '\n' at or after from, or size when there is none.
+    private static long lineStartAfter(FileChannel channel, long from, long size) throws IOException {
+        ByteBuffer block = ByteBuffer.allocate(8192);
+        long position = Math.max(0, from - 1);
+        while (position < size) {
+            block.clear();
+            int read = channel.read(block, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (block.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    // Writes the rows in line order without repeats and returns how many repeats were dropped.
+    private static long writeSorted(Ledger rows, Writer out) throws IOException {
+        int count = rows.size();
+        long[] keys = new long[count];
+        int[] order = new int[count];
+        for (int row = 0; row < count; row++) {
+            keys[row] = DateIndex.key(rows.getEpochDay(row), rows.getSecondOfDay(row));
+            order[row] = row;
+        }
+        DateIndex.sortByKey(keys, order);
+
+        long duplicates = 0;
+        StringBuilder text = new StringBuilder(128);
+        int from = 0;
+        while (from < count) {
+            int to = from + 1;
+            while (to < count && keys[to] == keys[from]) {
+                to++;
+            }
+            if (to - from == 1) {
+                out.write(line(text, rows, order[from]));
+            } else {
+                // Rows at the same second: order them by their text, which also puts repeats side by side.
+                String[] lines = new String[to - from];
+                for (int i = from; i < to; i++) {
+                    lines[i - from] = line(text, rows, order[i]);
+                }
+                Arrays.sort(lines);
+                for (int i = 0; i < lines.length; i++) {
+                    if (i > 0 && lines[i].equals(lines[i - 1])) {
+                        duplicates++;
+                    } else {
+                        out.write(lines[i]);
+                    }
+                }
+            }
+            from = to;
+        }
+        return duplicates;
+    }
+
+    // The row as a plain ledger line, newline included.
+    private static String line(StringBuilder text, Ledger rows, int row) {
+        text.setLength(0);
+        int second = rows.getSecondOfDay(row);
+        text.append(LocalDate.ofEpochDay(rows.getEpochDay(row))).append('|');
+        twoDigits(text, second / 3600).append(':');
+        twoDigits(text, second / 60 % 60).append(':');
+        twoDigits(text, second % 60).append('|');
+        text.append(rows.getDescription(row)).append('|').append(rows.getVendor(row)).append('|');
+        return Money.append(text, rows.getAmountCents(row)).append('\n').toString();
+    }
+
+    private static StringBuilder twoDigits(StringBuilder out, int value) {
+        return out.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
+    }
+
+    /* ------------------------------------------------------------------
+       Merge
+       ------------------------------------------------------------------ */
+    // One open run and its current line.
+    private static final class Cursor {
+        final BufferedReader in;
+        String line;
+
+        Cursor(Path run) throws IOException {
+            in = Files.newBufferedReader(run, StandardCharsets.UTF_8);
+            line = in.readLine();
+        }
+    }
+
+    // Merges the runs in line order, dropping repeats. With a cutoff, lines dated before it go to archived instead.
+    private static void merge(List<Path> runs, Writer kept, Writer archived, String cutoff, Result result)
+            throws IOException {
+        PriorityQueue<Cursor> queue = new PriorityQueue<>(Math.max(1, runs.size()), Comparator.comparing(c -> c.line));
+        List<Cursor> open = new ArrayList<>();
+        try {
+            for (Path run : runs) {
+                Cursor cursor = new Cursor(run);
+                open.add(cursor);
+                if (cursor.line != null) {
+                    queue.add(cursor);
+                }
+            }
+            String last = null;
+            while (!queue.isEmpty()) {
+                Cursor cursor = queue.poll();
+                String line = cursor.line;
+                if (line.equals(last)) {
+                    result.duplicates++;
+                } else if (cutoff != null && line.compareTo(cutoff) < 0) {
+                    archived.write(line);
+                    archived.write('\n');
+                    result.rowsArchived++;
+                } else {
+                    kept.write(line);
+                    kept.write('\n');
+                }
+                last = line;
+                cursor.line = cursor.in.readLine();
+                if (cursor.line != null) {
+                    queue.add(cursor);
+                }
+            }
+        } finally {
+            for (Cursor cursor : open) {
+                cursor.in.close();
+            }
+        }
+    }
+
+    // Last merge pass: writes the new ledger and the archive to temporary files, then moves them into place.
+    private void finish(List<Path> runs, Path work, LocalDate archiveBefore, Path archive, Result result)
+            throws IOException {
+        Path compacted = work.resolve("ledger.csv");
+        Path archiveTemp = work.resolve("archive.csv.gz");
+        String cutoff = archiveBefore == null ? null : archiveBefore.toString();
+        try (OutputStream keptFile = Files.newOutputStream(compacted);
+             Writer kept = writer(keptFile);
+             Writer archived = archiveBefore == null ? null
+                     : writer(new GZIPOutputStream(Files.newOutputStream(archiveTemp), IO_BUFFER_CHARS))) {
+            merge(runs, kept, archived, cutoff, result);
+        }
+        force(compacted);
+        result.rowsKept = result.rowsRead - result.duplicates - result.rowsArchived;
+        result.bytesAfter = Files.size(compacted);
+        if (archiveBefore != null) {
+            force(archiveTemp);
+            // Archive first: a crash between the two moves leaves the rows in both files, never in neither.
+            Files.move(archiveTemp, archive, StandardCopyOption.ATOMIC_MOVE);
+        }
+        Files.move(compacted, ledgerFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /* ------------------------------------------------------------------
+       Files
+       ------------------------------------------------------------------ */
+    private static Writer writer(OutputStream out) {
+        return new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), IO_BUFFER_CHARS);
+    }
+
+    private static void force(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+    }
+
+    private static void deleteTree(Path folder) throws IOException {
+        if (!Files.exists(folder)) {
+            return;
+        }
+        try (Stream<Path> files = Files.list(folder)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.deleteIfExists(file);
+            }
+        }
+        Files.deleteIfExists(folder);
+    }
+}
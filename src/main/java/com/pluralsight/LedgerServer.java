@@ -0,0 +1,338 @@
+package com.pluralsight;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*
+ * Local HTTP/JSON API over the ledger, on the JDK's built-in HTTP server. It only listens on
+ * the loopback address.
+ *
+ *   POST /transactions   {"date":"2024-01-31","time":"09:30:00","description":"...","vendor":"...","amount":-12.50}
+ *   GET  /transactions   every row          GET /range?start=&end=     rows dated start..end
+ *   GET  /deposits       amounts >= 0       GET /vendor?name=          rows of one vendor
+ *   GET  /payments       amounts < 0        GET /search?start=&end=&description=&vendor=&amount=&min=&max=
+ *
+ * Queries answer with NDJSON, one row object per line, at most limit rows (default
+ * DEFAULT_LIMIT) per request. When more rows match, the last line is {"next":"<cursor>"} and
+ * the same cursor is in the X-Next-Cursor header; pass it back as ?cursor= for the next page.
+ * Only one page of row ids is ever collected, and rows are written as they are formatted.
+ * A cursor is the row id to continue from, so pages stay stable while rows are appended.
+ *
+ * Every request runs on its own virtual thread when the JVM has them (Java 21+), found by
+ * reflection so the code still builds for Java 17; otherwise on a cached thread pool.
+ */
+public class LedgerServer {
+    private static final int DEFAULT_LIMIT = 1000;
+    private static final int MAX_LIMIT = 10_000;
+    private static final int BACKLOG = 4096;
+    private static final int MAX_BODY_BYTES = 64 * 1024;
+    private static final int FLUSH_BYTES = 32 * 1024;
+
+    // Stores one new transaction (ledger and journal) and returns its row id.
+    public interface Recorder {
+        int record(LocalDate date, LocalTime time, String description, String vendor, long amountCents) throws IOException;
+    }
+
+    // Turns the request parameters into the query to run; throws IllegalArgumentException for bad ones.
+    private interface QueryBuilder {
+        Query build(Map<String, String> params);
+    }
+
+    private final Ledger ledger;
+    private final Recorder recorder;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final boolean virtualThreads;
+
+    public LedgerServer(Ledger ledger, Recorder recorder, int port) throws IOException {
+        this.ledger = ledger;
+        this.recorder = recorder;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), BACKLOG);
+        ExecutorService virtual = newVirtualThreadExecutor();
+        this.virtualThreads = virtual != null;
+        this.executor = virtual != null ? virtual : Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "ledger-http");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+
+        server.createContext("/transactions", exchange -> handle(exchange, "/transactions", this::transactions));
+        route("/deposits", params -> Query.amountAtLeast(0));
+        route("/payments", params -> Query.amountAtMost(-1));
+        route("/range", params -> Query.dateBetween(date(params, "start"), date(params, "end")));
+        route("/vendor", params -> Query.vendor(required(params, "name")));
+        route("/search", LedgerServer::search);
+    }
+
+    //VIRTUAL THREADS-Executors.newVirtualThreadPerTaskExecutor() when this JVM has it, otherwise null.
+    public static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    //STOP-Stops accepting requests, gives running ones up to delaySeconds to finish, then stops the threads.
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        executor.shutdown();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public boolean usesVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /* ------------------------------------------------------------------
+       Routing
+       ------------------------------------------------------------------ */
+    private interface Handler {
+        void handle(HttpExchange exchange, Map<String, String> params) throws IOException;
+    }
+
+    private void route(String path, QueryBuilder builder) {
+        server.createContext(path, exchange -> handle(exchange, path, (ex, params) -> {
+            if (!ex.getRequestMethod().equals("GET")) {
+                error(ex, 405, "Use GET");
+                return;
+            }
+            query(ex, params, builder);
+        }));
+    }
+
+    // Contexts match by prefix; only the exact path is served. Bad parameters become 400s.
+    private void handle(HttpExchange exchange, String path, Handler handler) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestURI().getPath().equals(path)) {
+                error(exchange, 404, "Not found");
+                return;
+            }
+            Map<String, String> params;
+            try {
+                params = params(exchange.getRequestURI().getRawQuery());
+            } catch (IllegalArgumentException e) {
+                error(exchange, 400, "Bad query string");
+                return;
+            }
+            try {
+                handler.handle(exchange, params);
+            } catch (IllegalArgumentException | DateTimeParseException e) {
+                error(exchange, 400, e.getMessage());
+            }
+        } catch (IOException e) {
+            // The client went away mid-response; nothing left to tell it.
+        } catch (RuntimeException e) {
+            System.err.println(FinancialTracker.RED + "HTTP " + path + " FAILED: " + e + FinancialTracker.DEFAULT);
+        }
+    }
+
+    private void transactions(HttpExchange exchange, Map<String, String> params) throws IOException {
+        switch (exchange.getRequestMethod()) {
+            case "GET" -> query(exchange, params, p -> Query.all());
+            case "POST" -> append(exchange);
+            default -> error(exchange, 405, "Use GET or POST");
+        }
+    }
+
+    private static Query search(Map<String, String> params) {
+        List<Query> filters = new ArrayList<>();
+        if (params.containsKey("start") || params.containsKey("end")) {
+            filters.add(Query.dateBetween(date(params, "start"), date(params, "end")));
+        }
+        if (params.containsKey("description")) {
+            filters.add(Query.description(params.get("description")));
+        }
+        if (params.containsKey("vendor")) {
+            filters.add(Query.vendor(params.get("vendor")));
+        }
+        if (params.containsKey("amount")) {
+            filters.add(Query.amountEquals(cents(params.get("amount"))));
+        }
+        if (params.containsKey("min") || params.containsKey("max")) {
+            long min = params.containsKey("min") ? cents(params.get("min")) : Long.MIN_VALUE;
+            long max = params.containsKey("max") ? cents(params.get("max")) : Long.MAX_VALUE;
+            filters.add(Query.amountBetween(min, max));
+        }
+        return Query.and(filters);
+    }
+
+    /* ------------------------------------------------------------------
+       Queries
+       ------------------------------------------------------------------ */
+    private void query(HttpExchange exchange, Map<String, String> params, QueryBuilder builder) throws IOException {
+        Query query = builder.build(params);
+        int limit = params.containsKey("limit") ? parseInt(params.get("limit"), "limit") : DEFAULT_LIMIT;
+        if (limit < 1 || limit > MAX_LIMIT) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_LIMIT);
+        }
+        int cursor = params.containsKey("cursor") ? parseInt(params.get("cursor"), "cursor") : 0;
+        if (cursor < 0) {
+            throw new IllegalArgumentException("Bad cursor");
+        }
+
+        // One row more than the page tells whether there is a next page.
+        int[] rows = QueryPlan.compile(ledger, query).page(cursor, limit + 1);
+        int shown = Math.min(rows.length, limit);
+        String next = rows.length > limit ? Integer.toString(rows[limit]) : null;
+
+        exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson; charset=utf-8");
+        if (next != null) {
+            exchange.getResponseHeaders().set("X-Next-Cursor", next);
+        }
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream out = new BufferedOutputStream(exchange.getResponseBody(), FLUSH_BYTES);
+        StringBuilder line = new StringBuilder(160);
+        for (int i = 0; i < shown; i++) {
+            line.setLength(0);
+            appendRow(line, rows[i]);
+            out.write(line.append('\n').toString().getBytes(StandardCharsets.UTF_8));
+        }
+        if (next != null) {
+            out.write(("{\"next\":\"" + next + "\"}\n").getBytes(StandardCharsets.UTF_8));
+        }
+        out.flush();
+    }
+
+    private void appendRow(StringBuilder line, int row) {
+        line.append("{\"row\":").append(row).append(",\"date\":\"").append(ledger.getDate(row)).append("\",\"time\":\"");
+        int second = ledger.getSecondOfDay(row);
+        appendTwoDigits(line, second / 3600).append(':');
+        appendTwoDigits(line, second / 60 % 60).append(':');
+        appendTwoDigits(line, second % 60).append("\",\"description\":");
+        Json.appendString(line, ledger.getDescription(row)).append(",\"vendor\":");
+        Json.appendString(line, ledger.getVendor(row)).append(",\"amount\":");
+        Money.append(line, ledger.getAmountCents(row)).append('}');
+    }
+
+    private static StringBuilder appendTwoDigits(StringBuilder line, int value) {
+        return line.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
+    }
+
+    /* ------------------------------------------------------------------
+       Appends
+       ------------------------------------------------------------------ */
+    private void append(HttpExchange exchange) throws IOException {
+        Map<String, String> fields = Json.parseObject(body(exchange));
+        LocalDate date = LocalDate.parse(required(fields, "date"));
+        LocalTime time = LocalTime.parse(required(fields, "time"));
+        String description = text(fields, "description");
+        String vendor = text(fields, "vendor");
+        long amount = cents(required(fields, "amount"));
+        if (amount == 0) {
+            throw new IllegalArgumentException("amount must not be zero");
+        }
+        int row;
+        try {
+            row = recorder.record(date, time, description, vendor, amount);
+        } catch (IOException e) {
+            error(exchange, 503, "Could not save the transaction");
+            return;
+        }
+        byte[] body = ("{\"row\":" + row + "}\n").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(201, body.length);
+        exchange.getResponseBody().write(body);
+    }
+
+    private static String body(HttpExchange exchange) throws IOException {
+        InputStream in = exchange.getRequestBody();
+        byte[] bytes = in.readNBytes(MAX_BODY_BYTES + 1);
+        if (bytes.length > MAX_BODY_BYTES) {
+            throw new IllegalArgumentException("Request body too large");
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Description and vendor end up in a "|" separated line, so they can not hold "|" or line breaks.
+    private static String text(Map<String, String> fields, String name) {
+        String value = required(fields, name);
+        if (value.indexOf('|') >= 0 || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+            throw new IllegalArgumentException(name + " must not contain '|' or line breaks");
+        }
+        return value;
+    }
+
+    /* ------------------------------------------------------------------
+       Parameters and errors
+       ------------------------------------------------------------------ */
+    private static Map<String, String> params(String rawQuery) {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return params;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = URLDecoder.decode(equals < 0 ? pair : pair.substring(0, equals), StandardCharsets.UTF_8);
+            String value = equals < 0 ? "" : URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8);
+            params.put(name, value);
+        }
+        return params;
+    }
+
+    private static String required(Map<String, String> params, String name) {
+        String value = params.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing " + name);
+        }
+        return value;
+    }
+
+    private static LocalDate date(Map<String, String> params, String name) {
+        String value = params.get(name);
+        return value == null || value.isEmpty() ? null : LocalDate.parse(value);
+    }
+
+    private static long cents(String value) {
+        try {
+            return Money.parseCents(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid amount: " + value);
+        }
+    }
+
+    private static int parseInt(String value, String name) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + name + ": " + value);
+        }
+    }
+
+    private static void error(HttpExchange exchange, int status, String message) throws IOException {
+        StringBuilder body = new StringBuilder("{\"error\":");
+        Json.appendString(body, message == null ? "Bad request" : message).append("}\n");
+        byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+}
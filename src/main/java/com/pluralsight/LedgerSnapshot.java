@@ -0,0 +1,288 @@
+package com.pluralsight;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/*
+ * Binary image of a Ledger, used to skip re-parsing the CSV on start up.
+ *
+ * Layout (big-endian):
+ *
+ *   header   magic, version, row count, string count,
+ *            CSV offset and line count covered by the snapshot, last journal sequence,
+ *            CRC32 of the 4 KB of CSV just before the offset, CRC32 of the header itself
+ *   sections id, payload length, CRC32 of the payload, payload
+ *            DATES, TIMES, AMOUNTS, DESCRIPTIONS, VENDORS, STRINGS
+ *
+ * On start up the snapshot is memory-mapped and copied into the ledger columns in bulk, then
+ * only the CSV lines appended after the recorded offset have to be parsed. The CSV anchor
+ * checksum catches a CSV that was replaced or rewritten after the snapshot was taken.
+ */
+public class LedgerSnapshot {
+    private static final int MAGIC = 0x46545331; // "FTS1"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 4 + 4 + 4 + 4 + 8 + 8 + 8 + 8 + 8;
+    private static final int ANCHOR_BYTES = 4096;
+
+    private static final int DATES = 1;
+    private static final int TIMES = 2;
+    private static final int AMOUNTS = 3;
+    private static final int DESCRIPTIONS = 4;
+    private static final int VENDORS = 5;
+    private static final int STRINGS = 6;
+    private static final int SECTION_HEADER_BYTES = 4 + 8 + 8;
+    private static final int ALL_SECTIONS = (1 << DATES) | (1 << TIMES) | (1 << AMOUNTS) | (1 << DESCRIPTIONS)
+            | (1 << VENDORS) | (1 << STRINGS);
+
+    /* ------------------------------------------------------------------
+       What a snapshot covers
+       ------------------------------------------------------------------ */
+    public static class Header {
+        private final int rows;
+        private final long csvOffset;
+        private final long csvLines;
+        private final long lastSequence;
+
+        Header(int rows, long csvOffset, long csvLines, long lastSequence) {
+            this.rows = rows;
+            this.csvOffset = csvOffset;
+            this.csvLines = csvLines;
+            this.lastSequence = lastSequence;
+        }
+
+        public int getRows() {
+            return rows;
+        }
+
+        // CSV bytes before this offset are already in the snapshot.
+        public long getCsvOffset() {
+            return csvOffset;
+        }
+
+        public long getCsvLines() {
+            return csvLines;
+        }
+
+        public long getLastSequence() {
+            return lastSequence;
+        }
+    }
+
+    /* ------------------------------------------------------------------
+       Write
+       ------------------------------------------------------------------ */
+    //WRITE-Saves the columns to a temp file and moves it over the snapshot, so a crash never leaves half a snapshot.
+    static void write(Path snapshot, Ledger.Columns columns, Path csv, long csvOffset, long csvLines, long lastSequence)
+            throws IOException {
+        Path temp = snapshot.resolveSibling(snapshot.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC).putInt(VERSION).putInt(columns.size).putInt(columns.stringCount)
+                    .putLong(csvOffset).putLong(csvLines).putLong(lastSequence).putLong(anchorChecksum(csv, csvOffset));
+            header.putLong(checksum(header.array(), 0, header.position()));
+            header.flip();
+            writeFully(out, header, 0);
+
+            long position = HEADER_BYTES;
+            int size = columns.size;
+            position = writeSection(out, position, DATES, ints(columns.dates, size));
+            position = writeSection(out, position, TIMES, ints(columns.times, size));
+            position = writeSection(out, position, AMOUNTS, longs(columns.amounts, size));
+            position = writeSection(out, position, DESCRIPTIONS, ints(columns.descriptions, size));
+            position = writeSection(out, position, VENDORS, ints(columns.vendors, size));
+            writeSection(out, position, STRINGS, strings(columns.strings, columns.stringCount));
+            out.force(true);
+        }
+        Files.move(temp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static long writeSection(FileChannel out, long position, int id, ByteBuffer payload) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+        ByteBuffer header = ByteBuffer.allocate(SECTION_HEADER_BYTES);
+        header.putInt(id).putLong(payload.remaining()).putLong(crc.getValue()).flip();
+        long length = payload.remaining();
+        writeFully(out, header, position);
+        writeFully(out, payload, position + SECTION_HEADER_BYTES);
+        return position + SECTION_HEADER_BYTES + length;
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += out.write(buffer, position);
+        }
+    }
+
+    private static ByteBuffer ints(int[] values, int size) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(size * 4);
+        buffer.asIntBuffer().put(values, 0, size);
+        return buffer;
+    }
+
+    private static ByteBuffer longs(long[] values, int size) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(size * 8);
+        buffer.asLongBuffer().put(values, 0, size);
+        return buffer;
+    }
+
+    private static ByteBuffer strings(String[] values, int count) {
+        byte[][] encoded = new byte[count][];
+        int total = 0;
+        for (int i = 0; i < count; i++) {
+            encoded[i] = values[i].getBytes(StandardCharsets.UTF_8);
+            total += 4 + encoded[i].length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(total);
+        for (byte[] value : encoded) {
+            buffer.putInt(value.length).put(value);
+        }
+        return buffer.flip();
+    }
+
+    /* ------------------------------------------------------------------
+       Read
+       ------------------------------------------------------------------ */
+    //READ-Loads the snapshot into an empty ledger. Returns null, leaving the ledger untouched, when it is missing, corrupt or does not match the CSV.
+    public static Header read(Path snapshot, Ledger target, Path csv) throws IOException {
+        if (!Files.exists(snapshot) || !Files.exists(csv)) {
+            return null;
+        }
+        try (FileChannel in = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            long fileSize = in.size();
+            if (fileSize < HEADER_BYTES) {
+                return null;
+            }
+            byte[] headerBytes = new byte[HEADER_BYTES];
+            ByteBuffer header = ByteBuffer.wrap(headerBytes);
+            readFully(in, header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                return null;
+            }
+            int rows = header.getInt();
+            int stringCount = header.getInt();
+            long csvOffset = header.getLong();
+            long csvLines = header.getLong();
+            long lastSequence = header.getLong();
+            long anchor = header.getLong();
+            if (header.getLong() != checksum(headerBytes, 0, HEADER_BYTES - 8)) {
+                return null;
+            }
+            if (csvOffset > Files.size(csv) || anchor != anchorChecksum(csv, csvOffset)) {
+                return null;
+            }
+
+            int[] dates = new int[rows];
+            int[] times = new int[rows];
+            long[] amounts = new long[rows];
+            int[] descriptions = new int[rows];
+            int[] vendors = new int[rows];
+            String[] strings = new String[stringCount];
+
+            // Sections are mapped one at a time, so the file as a whole may exceed 2 GB.
+            int seen = 0;
+            long position = HEADER_BYTES;
+            ByteBuffer sectionHeader = ByteBuffer.allocate(SECTION_HEADER_BYTES);
+            while (position + SECTION_HEADER_BYTES <= fileSize) {
+                sectionHeader.clear();
+                readFully(in, sectionHeader, position);
+                sectionHeader.flip();
+                int id = sectionHeader.getInt();
+                long length = sectionHeader.getLong();
+                long crc = sectionHeader.getLong();
+                position += SECTION_HEADER_BYTES;
+                if (length < 0 || length > Integer.MAX_VALUE || position + length > fileSize) {
+                    return null;
+                }
+                MappedByteBuffer payload = in.map(FileChannel.MapMode.READ_ONLY, position, length);
+                CRC32 check = new CRC32();
+                check.update(payload.duplicate());
+                if (check.getValue() != crc || length != expectedLength(id, rows, length)) {
+                    return null;
+                }
+                if (id >= DATES && id <= STRINGS) {
+                    seen |= 1 << id;
+                }
+                switch (id) {
+                    case DATES -> payload.asIntBuffer().get(dates);
+                    case TIMES -> payload.asIntBuffer().get(times);
+                    case AMOUNTS -> payload.asLongBuffer().get(amounts);
+                    case DESCRIPTIONS -> payload.asIntBuffer().get(descriptions);
+                    case VENDORS -> payload.asIntBuffer().get(vendors);
+                    case STRINGS -> readStrings(payload, strings);
+                    default -> { } // Unknown sections from newer writers are skipped.
+                }
+                position += length;
+            }
+            if (seen != ALL_SECTIONS) {
+                return null;
+            }
+            target.restore(new Ledger.Columns(rows, dates, times, amounts, descriptions, vendors, strings, stringCount));
+            return new Header(rows, csvOffset, csvLines, lastSequence);
+        } catch (RuntimeException e) {
+            // Truncated sections or impossible lengths: treat like a missing snapshot.
+            return null;
+        }
+    }
+
+    private static void readFully(FileChannel in, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = in.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of snapshot");
+            }
+            position += read;
+        }
+    }
+
+    private static long expectedLength(int id, int rows, long length) {
+        return switch (id) {
+            case DATES, TIMES, DESCRIPTIONS, VENDORS -> rows * 4L;
+            case AMOUNTS -> rows * 8L;
+            default -> length;
+        };
+    }
+
+    private static void readStrings(ByteBuffer payload, String[] strings) {
+        for (int i = 0; i < strings.length; i++) {
+            byte[] value = new byte[payload.getInt()];
+            payload.get(value);
+            strings[i] = new String(value, StandardCharsets.UTF_8);
+        }
+    }
+
+    /* ------------------------------------------------------------------
+       Checksums
+       ------------------------------------------------------------------ */
+    private static long checksum(byte[] bytes, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, offset, length);
+        return crc.getValue();
+    }
+
+    // CRC32 of the CSV bytes just before the offset, so a rewritten CSV invalidates the snapshot.
+    private static long anchorChecksum(Path csv, long offset) throws IOException {
+        if (offset == 0) {
+            return 0;
+        }
+        int length = (int) Math.min(ANCHOR_BYTES, offset);
+        ByteBuffer bytes = ByteBuffer.allocate(length);
+        try (FileChannel in = FileChannel.open(csv, StandardOpenOption.READ)) {
+            while (bytes.hasRemaining()) {
+                if (in.read(bytes, offset - length + bytes.position()) < 0) {
+                    throw new IOException("CSV is shorter than the snapshot offset");
+                }
+            }
+        }
+        return checksum(bytes.array(), 0, length);
+    }
+}
@@ -0,0 +1,213 @@
+package com.pluralsight;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/*
+ * Latency and volume counters for the tracker's operations (load, append, every report).
+ *
+ * Each named Operation has a LatencyHistogram plus counters for rows scanned (rows a plan or
+ * loop had to look at), rows returned (rows that matched), and bytes read and written, so a
+ * slow report can be told apart as "looked at too much" or "returned too much". Gauges are
+ * read when the metrics are shown: ledger size, its estimated heap, the JVM heap.
+ *
+ * Recording never locks: operations are created once and then only touch atomics. The
+ * counters are shown by the main menu (M) and over JMX (see MetricsMXBean).
+ */
+public class Metrics implements MetricsMXBean {
+    public static final String OBJECT_NAME = "com.pluralsight:type=Metrics";
+
+    /* ------------------------------------------------------------------
+       One operation
+       ------------------------------------------------------------------ */
+    public static class Operation {
+        private final String name;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder rowsScanned = new LongAdder();
+        private final LongAdder rowsReturned = new LongAdder();
+        private final LongAdder bytesRead = new LongAdder();
+        private final LongAdder bytesWritten = new LongAdder();
+
+        Operation(String name) {
+            this.name = name;
+        }
+
+        //RECORD-Records the time since startNanos (a System.nanoTime() taken when the operation began).
+        public void record(long startNanos) {
+            latency.record(System.nanoTime() - startNanos);
+        }
+
+        public void rows(long scanned, long returned) {
+            rowsScanned.add(scanned);
+            rowsReturned.add(returned);
+        }
+
+        public void bytes(long read, long written) {
+            bytesRead.add(read);
+            bytesWritten.add(written);
+        }
+
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        OperationStats stats() {
+            return new OperationStats(name, latency.getCount(), latency.getPercentile(0.50), latency.getPercentile(0.99),
+                    latency.getPercentile(0.999), latency.getMax(), rowsScanned.sum(), rowsReturned.sum(),
+                    bytesRead.sum(), bytesWritten.sum());
+        }
+
+        void reset() {
+            latency.reset();
+            rowsScanned.reset();
+            rowsReturned.reset();
+            bytesRead.reset();
+            bytesWritten.reset();
+        }
+    }
+
+    // Read-only copy of one operation, shown by JMX as a composite value.
+    public static class OperationStats {
+        private final String name;
+        private final long count;
+        private final long p50Nanos;
+        private final long p99Nanos;
+        private final long p999Nanos;
+        private final long maxNanos;
+        private final long rowsScanned;
+        private final long rowsReturned;
+        private final long bytesRead;
+        private final long bytesWritten;
+
+        OperationStats(String name, long count, long p50Nanos, long p99Nanos, long p999Nanos, long maxNanos,
+                       long rowsScanned, long rowsReturned, long bytesRead, long bytesWritten) {
+            this.name = name;
+            this.count = count;
+            this.p50Nanos = p50Nanos;
+            this.p99Nanos = p99Nanos;
+            this.p999Nanos = p999Nanos;
+            this.maxNanos = maxNanos;
+            this.rowsScanned = rowsScanned;
+            this.rowsReturned = rowsReturned;
+            this.bytesRead = bytesRead;
+            this.bytesWritten = bytesWritten;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getP50Nanos() {
+            return p50Nanos;
+        }
+
+        public long getP99Nanos() {
+            return p99Nanos;
+        }
+
+        public long getP999Nanos() {
+            return p999Nanos;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        public long getRowsScanned() {
+            return rowsScanned;
+        }
+
+        public long getRowsReturned() {
+            return rowsReturned;
+        }
+
+        public long getBytesRead() {
+            return bytesRead;
+        }
+
+        public long getBytesWritten() {
+            return bytesWritten;
+        }
+    }
+
+    private final ConcurrentSkipListMap<String, Operation> operations = new ConcurrentSkipListMap<>();
+    private final ConcurrentSkipListMap<String, LongSupplier> gauges = new ConcurrentSkipListMap<>();
+
+    //OPERATION-The operation with this name, created on first use.
+    public Operation operation(String name) {
+        Operation operation = operations.get(name);
+        return operation != null ? operation : operations.computeIfAbsent(name, Operation::new);
+    }
+
+    //GAUGE-A value read each time the metrics are shown.
+    public void gauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    //REGISTER-Publishes these metrics over JMX. Returns false if the platform MBean server refused them.
+    public boolean register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+            return true;
+        } catch (JMException e) {
+            return false;
+        }
+    }
+
+    /* ------------------------------------------------------------------
+       MXBean
+       ------------------------------------------------------------------ */
+    @Override
+    public List<OperationStats> getOperations() {
+        List<OperationStats> stats = new ArrayList<>();
+        for (Operation operation : operations.values()) {
+            stats.add(operation.stats());
+        }
+        return stats;
+    }
+
+    @Override
+    public Map<String, Long> getGauges() {
+        Map<String, Long> values = new LinkedHashMap<>();
+        for (Map.Entry<String, LongSupplier> gauge : gauges.entrySet()) {
+            values.put(gauge.getKey(), gauge.getValue().getAsLong());
+        }
+        return values;
+    }
+
+    @Override
+    public String dump() {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("%-22s %8s %9s %9s %9s %9s %12s %12s %12s %12s%n", "Operation", "Count", "p50 ms",
+                "p99 ms", "p99.9 ms", "Max ms", "Scanned", "Returned", "Bytes In", "Bytes Out"));
+        for (OperationStats stats : getOperations()) {
+            out.append(String.format("%-22s %8d %9.3f %9.3f %9.3f %9.3f %12d %12d %12d %12d%n", stats.getName(),
+                    stats.getCount(), stats.getP50Nanos() / 1e6, stats.getP99Nanos() / 1e6, stats.getP999Nanos() / 1e6,
+                    stats.getMaxNanos() / 1e6, stats.getRowsScanned(), stats.getRowsReturned(), stats.getBytesRead(),
+                    stats.getBytesWritten()));
+        }
+        for (Map.Entry<String, Long> gauge : getGauges().entrySet()) {
+            out.append(String.format("%-22s %d%n", gauge.getKey(), gauge.getValue()));
+        }
+        return out.toString();
+    }
+
+    @Override
+    public void reset() {
+        for (Operation operation : operations.values()) {
+            operation.reset();
+        }
+    }
+}
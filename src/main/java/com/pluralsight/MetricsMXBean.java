@@ -0,0 +1,23 @@
+package com.pluralsight;
+
+import java.util.List;
+import java.util.Map;
+
+/*
+ * JMX view of the tracker's Metrics, registered as com.pluralsight:type=Metrics.
+ * Open it with jconsole or VisualVM (MBeans tab) while the app is running.
+ */
+public interface MetricsMXBean {
+
+    // One entry per instrumented operation, sorted by name.
+    List<Metrics.OperationStats> getOperations();
+
+    // Current values of the gauges: ledger rows, ledger heap estimate, JVM heap used, ...
+    Map<String, Long> getGauges();
+
+    // The same text the menu prints.
+    String dump();
+
+    // Clears every histogram and counter; gauges are read live and are not affected.
+    void reset();
+}
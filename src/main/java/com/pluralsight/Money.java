@@ -0,0 +1,162 @@
+package com.pluralsight;
+
+import java.nio.ByteBuffer;
+
+/*
+ * Amounts are fixed-point: a long count of cents, everywhere from parsing to storage to
+ * totals. This class parses and formats them without going through double, so 0.10 + 0.20
+ * is exactly 0.30 and an amount typed into a search matches the stored one exactly.
+ *
+ * Text form is an optional sign, digits, and an optional '.' with one or two fraction
+ * digits ("12", "-12.5", "12.50"). Parsing and the byte/StringBuilder writers allocate
+ * nothing, so they are safe on the load and render paths.
+ */
+public final class Money {
+    // 15 integer digits keep cents far away from Long.MAX_VALUE.
+    private static final int MAX_INTEGER_DIGITS = 15;
+
+    private Money() {
+    }
+
+    /* ------------------------------------------------------------------
+       Parsing
+       ------------------------------------------------------------------ */
+    //PARSE-Cents of a decimal such as "-12.50". Throws NumberFormatException for anything else.
+    public static long parseCents(CharSequence text) {
+        return parseCents(text, 0, text.length());
+    }
+
+    public static long parseCents(CharSequence text, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+            negative = text.charAt(i) == '-';
+            i++;
+        }
+        long units = 0;
+        int integerDigits = 0;
+        while (i < end && text.charAt(i) != '.') {
+            int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9 || integerDigits == MAX_INTEGER_DIGITS) {
+                throw new NumberFormatException("invalid amount");
+            }
+            units = units * 10 + digit;
+            integerDigits++;
+            i++;
+        }
+        long fraction = 0;
+        int fractionDigits = 0;
+        if (i < end) {
+            i++;
+            while (i < end) {
+                int digit = text.charAt(i) - '0';
+                if (digit < 0 || digit > 9 || fractionDigits == 2) {
+                    throw new NumberFormatException("invalid amount");
+                }
+                fraction = fraction * 10 + digit;
+                fractionDigits++;
+                i++;
+            }
+        }
+        return toCents(negative, units, integerDigits, fraction, fractionDigits);
+    }
+
+    // Same rules, reading ASCII bytes [start, end) of a buffer (the loader's mapped file).
+    public static long parseCents(ByteBuffer buffer, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+            negative = buffer.get(i) == '-';
+            i++;
+        }
+        long units = 0;
+        int integerDigits = 0;
+        while (i < end && buffer.get(i) != '.') {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9 || integerDigits == MAX_INTEGER_DIGITS) {
+                throw new NumberFormatException("invalid amount");
+            }
+            units = units * 10 + digit;
+            integerDigits++;
+            i++;
+        }
+        long fraction = 0;
+        int fractionDigits = 0;
+        if (i < end) {
+            i++;
+            while (i < end) {
+                int digit = buffer.get(i) - '0';
+                if (digit < 0 || digit > 9 || fractionDigits == 2) {
+                    throw new NumberFormatException("invalid amount");
+                }
+                fraction = fraction * 10 + digit;
+                fractionDigits++;
+                i++;
+            }
+        }
+        return toCents(negative, units, integerDigits, fraction, fractionDigits);
+    }
+
+    private static long toCents(boolean negative, long units, int integerDigits, long fraction, int fractionDigits) {
+        if (integerDigits == 0 && fractionDigits == 0) {
+            throw new NumberFormatException("invalid amount");
+        }
+        if (fractionDigits == 1) {
+            fraction *= 10;
+        }
+        long cents = units * 100 + fraction;
+        return negative ? -cents : cents;
+    }
+
+    /* ------------------------------------------------------------------
+       Formatting
+       ------------------------------------------------------------------ */
+    //FORMAT-"-12.50" style text, the same as String.format("%.2f", cents / 100.0).
+    public static String format(long cents) {
+        return append(new StringBuilder(24), cents).toString();
+    }
+
+    public static StringBuilder append(StringBuilder out, long cents) {
+        if (cents < 0) {
+            out.append('-');
+        }
+        long magnitude = Math.abs(cents);
+        out.append(magnitude / 100).append('.');
+        long fraction = magnitude % 100;
+        if (fraction < 10) {
+            out.append('0');
+        }
+        return out.append(fraction);
+    }
+
+    // Number of bytes write() produces for the amount.
+    public static int length(long cents) {
+        long whole = Math.abs(cents) / 100;
+        int digits = 1;
+        while (whole >= 10) {
+            whole /= 10;
+            digits++;
+        }
+        return (cents < 0 ? 1 : 0) + digits + 3;
+    }
+
+    //WRITE-Puts the text of the amount into out at position and returns the position after it.
+    public static int write(long cents, byte[] out, int position) {
+        int end = position + length(cents);
+        long magnitude = Math.abs(cents);
+        int at = end;
+        out[--at] = (byte) ('0' + magnitude % 10);
+        magnitude /= 10;
+        out[--at] = (byte) ('0' + magnitude % 10);
+        magnitude /= 10;
+        out[--at] = '.';
+        do {
+            out[--at] = (byte) ('0' + magnitude % 10);
+            magnitude /= 10;
+        } while (magnitude > 0);
+        if (cents < 0) {
+            out[--at] = '-';
+        }
+        return end;
+    }
+}
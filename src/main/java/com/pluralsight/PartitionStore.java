@@ -0,0 +1,487 @@
+package com.pluralsight;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/*
+ * The ledger stored as one file per month (or per year) in a directory, loaded lazily.
+ *
+ * A partition file holds ordinary ledger lines followed by one footer line:
+ *
+ *   #partition|2024-01|2024-01-02|2024-01-31|412|37|1250000|375|-987654
+ *             key     min date   max date   rows deposits (count, cents) payments (count, cents)
+ *
+ * Opening the store reads only the footers, so it costs one small read per partition no matter
+ * how many rows there are. Date-bounded reports ask for the partitions whose min..max date
+ * overlaps the range and load just those; at most maxResident partitions stay in memory, the
+ * least recently used one is dropped first. Totals and balances use the footer of every
+ * partition that lies completely inside the range and only load the ones cut by its edges.
+ *
+ * An append writes the new line over the old footer and writes a new footer after it. If the
+ * process dies half way the file no longer ends with a valid footer; open() notices that,
+ * drops the torn tail and rewrites the footer from the rows that are left.
+ */
+public class PartitionStore {
+    private static final String FOOTER = "#partition|";
+    private static final String SUFFIX = ".csv";
+    // Footers are a few dozen bytes; read this much from the end of a file to find one.
+    private static final int FOOTER_PROBE = 512;
+
+    public enum Granularity {
+        MONTH, YEAR;
+
+        //PARSE-"month" or "year", any case.
+        public static Granularity parse(String text) {
+            return valueOf(text.trim().toUpperCase());
+        }
+
+        // File name (without .csv) of the partition a date belongs to: 2024-01 or 2024.
+        String key(LocalDate date) {
+            return this == MONTH ? String.format("%04d-%02d", date.getYear(), date.getMonthValue())
+                    : String.format("%04d", date.getYear());
+        }
+
+        // The granularity a partition file name (without .csv) was written with, or null when it is neither.
+        static Granularity ofKey(String key) {
+            if (key.matches("\\d{4}-(0[1-9]|1[0-2])")) {
+                return MONTH;
+            }
+            return key.matches("\\d{4}") ? YEAR : null;
+        }
+    }
+
+    /* ------------------------------------------------------------------
+       One partition file
+       ------------------------------------------------------------------ */
+    public static class Partition {
+        private final String key;
+        private final Path file;
+        private int minDay = Integer.MAX_VALUE;
+        private int maxDay = Integer.MIN_VALUE;
+        private int rows;
+        private Aggregates.Totals totals = new Aggregates.Totals();
+        private long footerOffset; // where the footer starts, i.e. where the next line goes
+
+        Partition(String key, Path file) {
+            this.key = key;
+            this.file = file;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public Path getFile() {
+            return file;
+        }
+
+        public LocalDate getMinDate() {
+            return LocalDate.ofEpochDay(minDay);
+        }
+
+        public LocalDate getMaxDate() {
+            return LocalDate.ofEpochDay(maxDay);
+        }
+
+        public int getRows() {
+            return rows;
+        }
+
+        // Copy of the totals from the footer.
+        public Aggregates.Totals getTotals() {
+            return totals.copy();
+        }
+
+        boolean overlaps(int startDay, int endDay) {
+            return rows > 0 && minDay <= endDay && maxDay >= startDay;
+        }
+
+        boolean within(int startDay, int endDay) {
+            return minDay >= startDay && maxDay <= endDay;
+        }
+
+        void add(int epochDay, long amountCents) {
+            minDay = Math.min(minDay, epochDay);
+            maxDay = Math.max(maxDay, epochDay);
+            rows++;
+            totals.add(amountCents);
+        }
+
+        // The same stats with one more row, e.g. to write a footer before the row is known to be on disk.
+        Partition with(int epochDay, long amountCents) {
+            Partition next = new Partition(key, file);
+            next.minDay = minDay;
+            next.maxDay = maxDay;
+            next.rows = rows;
+            next.totals = totals.copy();
+            next.add(epochDay, amountCents);
+            return next;
+        }
+
+        String footer() {
+            return FOOTER + key + "|" + LocalDate.ofEpochDay(minDay) + "|" + LocalDate.ofEpochDay(maxDay) + "|" + rows
+                    + "|" + totals.getDepositCount() + "|" + totals.getDepositCents()
+                    + "|" + totals.getPaymentCount() + "|" + totals.getPaymentCents() + "\n";
+        }
+    }
+
+    private final Path directory;
+    private final Granularity granularity;
+    private final int maxResident;
+    private final TreeMap<String, Partition> partitions = new TreeMap<>();
+    private final LinkedHashMap<Partition, Ledger> resident;
+    private long loads;
+    private long bytesLoaded;
+    private long evictions;
+    private int repaired;
+
+    private PartitionStore(Path directory, Granularity granularity, int maxResident) {
+        this.directory = directory;
+        this.granularity = granularity;
+        this.maxResident = Math.max(1, maxResident);
+        this.resident = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Partition, Ledger> eldest) {
+                if (size() > PartitionStore.this.maxResident) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /* ------------------------------------------------------------------
+       Opening and migration
+       ------------------------------------------------------------------ */
+    //OPEN-Reads the footer of every partition in the directory; no rows are loaded yet.
+    // The granularity comes from the file names; a null granularity accepts either (month for an empty directory),
+    // otherwise a directory written with the other one is refused, as is one whose names fit neither or both.
+    public static PartitionStore open(Path directory, Granularity granularity, int maxResident) throws IOException {
+        Files.createDirectories(directory);
+        Map<String, Path> found = new TreeMap<>();
+        Granularity onDisk = null;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                String key = name.substring(0, name.length() - SUFFIX.length());
+                Granularity kind = Granularity.ofKey(key);
+                if (kind == null) {
+                    throw new IOException(file + " is not named like a month (2024-01) or year (2024) partition");
+                }
+                if (onDisk != null && kind != onDisk) {
+                    throw new IOException(directory + " holds both month and year partitions");
+                }
+                onDisk = kind;
+                found.put(key, file);
+            }
+        }
+        if (granularity != null && onDisk != null && granularity != onDisk) {
+            throw new IOException(directory + " holds " + onDisk.name().toLowerCase() + " partitions, not "
+                    + granularity.name().toLowerCase());
+        }
+        PartitionStore store = new PartitionStore(directory,
+                onDisk != null ? onDisk : granularity != null ? granularity : Granularity.MONTH, maxResident);
+        for (Map.Entry<String, Path> file : found.entrySet()) {
+            Partition partition = new Partition(file.getKey(), file.getValue());
+            if (readFooter(partition) || store.repair(partition)) {
+                store.partitions.put(partition.key, partition);
+            }
+        }
+        return store;
+    }
+
+    //MIGRATE-Writes every row of the ledger into partition files in a new or empty directory and returns how many were written.
+    // The files are written into a sibling folder that replaces the directory in one move once all of them are complete,
+    // so a crash never leaves a half migrated directory behind.
+    public static int migrate(Ledger ledger, Path directory, Granularity granularity) throws IOException {
+        if (Files.exists(directory)) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+                if (files.iterator().hasNext()) {
+                    throw new IOException(directory + " is not empty");
+                }
+            }
+        }
+        Path staging = directory.resolveSibling(directory.getFileName() + ".migrating");
+        deleteFolder(staging); // left over from a migration that did not finish
+        Files.createDirectories(staging);
+        Map<String, Partition> written = new TreeMap<>();
+        Map<String, BufferedWriter> writers = new TreeMap<>();
+        StringBuilder line = new StringBuilder(128);
+        int lastDay = Integer.MIN_VALUE;
+        String key = null;
+        boolean done = false;
+        try {
+            int size = ledger.size();
+            for (int row = 0; row < size; row++) {
+                int day = ledger.getEpochDay(row);
+                if (day != lastDay) {
+                    lastDay = day;
+                    key = granularity.key(LocalDate.ofEpochDay(day));
+                }
+                Partition partition = written.get(key);
+                if (partition == null) {
+                    partition = new Partition(key, staging.resolve(key + SUFFIX));
+                    written.put(key, partition);
+                    writers.put(key, Files.newBufferedWriter(partition.file, StandardCharsets.UTF_8));
+                }
+                line.setLength(0);
+                appendLine(line, day, ledger.getSecondOfDay(row), ledger.getDescription(row), ledger.getVendor(row),
+                        ledger.getAmountCents(row));
+                writers.get(key).append(line);
+                partition.add(day, ledger.getAmountCents(row));
+            }
+            for (Partition partition : written.values()) {
+                BufferedWriter writer = writers.remove(partition.key);
+                writer.write(partition.footer());
+                writer.close();
+                try (FileChannel channel = FileChannel.open(partition.file, StandardOpenOption.WRITE)) {
+                    channel.force(true);
+                }
+            }
+            Files.deleteIfExists(directory); // empty, checked above
+            Files.move(staging, directory, StandardCopyOption.ATOMIC_MOVE);
+            done = true;
+        } finally {
+            for (BufferedWriter open : writers.values()) {
+                open.close();
+            }
+            if (!done) {
+                deleteFolder(staging);
+            }
+        }
+        return written.size();
+    }
+
+    // Deletes a folder of plain files, if it is there.
+    private static void deleteFolder(Path folder) throws IOException {
+        if (!Files.isDirectory(folder)) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(folder)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(folder);
+    }
+
+    private static Path temporary(Path file) {
+        return file.resolveSibling(file.getFileName() + ".tmp");
+    }
+
+    // Parses the last line of the file. Returns false when it is not a complete footer.
+    private static boolean readFooter(Partition partition) throws IOException {
+        try (FileChannel channel = FileChannel.open(partition.file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            int probe = (int) Math.min(size, FOOTER_PROBE);
+            ByteBuffer tail = ByteBuffer.allocate(probe);
+            channel.read(tail, size - probe);
+            String text = new String(tail.array(), 0, tail.position(), StandardCharsets.UTF_8);
+            if (!text.endsWith("\n")) {
+                return false;
+            }
+            int start = text.lastIndexOf('\n', text.length() - 2) + 1;
+            String[] fields = text.substring(start, text.length() - 1).split("\\|");
+            if (!text.startsWith(FOOTER, start) || fields.length != 9 || !fields[1].equals(partition.key)) {
+                return false;
+            }
+            try {
+                partition.minDay = (int) LocalDate.parse(fields[2]).toEpochDay();
+                partition.maxDay = (int) LocalDate.parse(fields[3]).toEpochDay();
+                partition.rows = Integer.parseInt(fields[4]);
+                partition.totals = new Aggregates.Totals(Long.parseLong(fields[5]), Long.parseLong(fields[6]),
+                        Long.parseLong(fields[7]), Long.parseLong(fields[8]));
+            } catch (RuntimeException e) {
+                return false;
+            }
+            partition.footerOffset = size - text.substring(start).getBytes(StandardCharsets.UTF_8).length;
+            return true;
+        }
+    }
+
+    // Rewrites a partition whose footer is missing or torn from the rows that still parse.
+    // A file without a single good row is deleted, and false is returned.
+    private boolean repair(Partition partition) throws IOException {
+        Ledger rows = new Ledger(false);
+        TransactionLoader.load(partition.file, rows, 1);
+        StringBuilder text = new StringBuilder();
+        for (int row = 0; row < rows.size(); row++) {
+            appendLine(text, rows.getEpochDay(row), rows.getSecondOfDay(row), rows.getDescription(row),
+                    rows.getVendor(row), rows.getAmountCents(row));
+            partition.add(rows.getEpochDay(row), rows.getAmountCents(row));
+        }
+        repaired++;
+        if (partition.rows == 0) {
+            Files.delete(partition.file);
+            return false;
+        }
+        partition.footerOffset = text.toString().getBytes(StandardCharsets.UTF_8).length;
+        text.append(partition.footer());
+        Path temporary = temporary(partition.file);
+        Files.writeString(temporary, text, StandardCharsets.UTF_8);
+        Files.move(temporary, partition.file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return true;
+    }
+
+    /* ------------------------------------------------------------------
+       Reads
+       ------------------------------------------------------------------ */
+    //OVERLAPPING-Partitions holding rows dated from start to end, oldest first. A null end is open.
+    public synchronized List<Partition> overlapping(LocalDate start, LocalDate end) {
+        int startDay = start == null ? Query.MIN_DAY : (int) start.toEpochDay();
+        int endDay = end == null ? Query.MAX_DAY : (int) end.toEpochDay();
+        List<Partition> result = new ArrayList<>();
+        for (Partition partition : partitions.values()) {
+            if (partition.overlaps(startDay, endDay)) {
+                result.add(partition);
+            }
+        }
+        return result;
+    }
+
+    //LEDGER-The rows of one partition, loaded on first use and kept while it is among the most recently used.
+    public synchronized Ledger ledger(Partition partition) throws IOException {
+        Ledger rows = resident.get(partition);
+        if (rows == null) {
+            rows = new Ledger();
+            TransactionLoader.Result result = TransactionLoader.load(partition.file, rows);
+            if (!result.getErrors().isEmpty()) {
+                throw new IOException(partition.file + ": " + result.getErrors().get(0));
+            }
+            loads++;
+            bytesLoaded += result.getBytesRead();
+            resident.put(partition, rows);
+        }
+        return rows;
+    }
+
+    //TOTALS-Totals of the rows dated from start to end. Footers cover whole partitions; only the edges are loaded.
+    public Aggregates.Totals totals(LocalDate start, LocalDate end) throws IOException {
+        int startDay = start == null ? Query.MIN_DAY : (int) start.toEpochDay();
+        int endDay = end == null ? Query.MAX_DAY : (int) end.toEpochDay();
+        Aggregates.Totals totals = new Aggregates.Totals();
+        for (Partition partition : overlapping(start, end)) {
+            if (partition.within(startDay, endDay)) {
+                totals.add(partition.getTotals());
+            } else {
+                totals.add(ledger(partition).getAggregates().range(
+                        LocalDate.ofEpochDay(Math.max(startDay, partition.minDay)),
+                        LocalDate.ofEpochDay(Math.min(endDay, partition.maxDay))));
+            }
+        }
+        return totals;
+    }
+
+    public long balanceAsOf(LocalDate date) throws IOException {
+        return totals(null, date).getNetCents();
+    }
+
+    /* ------------------------------------------------------------------
+       Appends
+       ------------------------------------------------------------------ */
+    //APPEND-Adds one row to the partition of its date (creating the file if needed) and returns its row id in that partition.
+    public synchronized int append(LocalDate date, LocalTime time, String description, String vendor, long amountCents)
+            throws IOException {
+        String key = granularity.key(date);
+        Partition partition = partitions.get(key);
+        if (partition == null) {
+            partition = new Partition(key, directory.resolve(key + SUFFIX));
+        }
+        int day = (int) date.toEpochDay();
+        StringBuilder line = new StringBuilder(128);
+        appendLine(line, day, time.toSecondOfDay(), description, vendor, amountCents);
+        byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+
+        // The footer already counts the row, but the partition only does once the write went through.
+        byte[] footer = partition.with(day, amountCents).footer().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer out = ByteBuffer.allocate(bytes.length + footer.length).put(bytes).put(footer).flip();
+        try (FileChannel channel = FileChannel.open(partition.file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            long position = partition.footerOffset;
+            while (out.hasRemaining()) {
+                position += channel.write(out, position);
+            }
+            channel.truncate(position);
+            channel.force(false);
+        }
+        partition.add(day, amountCents);
+        partition.footerOffset += bytes.length;
+        partitions.put(key, partition);
+
+        Ledger rows = resident.get(partition);
+        return rows == null ? partition.rows - 1 : rows.append(date, time, description, vendor, amountCents);
+    }
+
+    // One ledger line: date|time|description|vendor|amount and a newline.
+    private static void appendLine(StringBuilder out, int epochDay, int secondOfDay, String description, String vendor,
+                                   long amountCents) {
+        out.append(LocalDate.ofEpochDay(epochDay)).append('|');
+        twoDigits(out, secondOfDay / 3600).append(':');
+        twoDigits(out, secondOfDay / 60 % 60).append(':');
+        twoDigits(out, secondOfDay % 60).append('|');
+        out.append(description).append('|').append(vendor).append('|');
+        Money.append(out, amountCents).append('\n');
+    }
+
+    private static StringBuilder twoDigits(StringBuilder out, int value) {
+        return out.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
+    }
+
+    /* ------------------------------------------------------------------
+       Counters
+       ------------------------------------------------------------------ */
+    public synchronized int getPartitionCount() {
+        return partitions.size();
+    }
+
+    public synchronized long getRowCount() {
+        long rows = 0;
+        for (Partition partition : partitions.values()) {
+            rows += partition.rows;
+        }
+        return rows;
+    }
+
+    public synchronized int getResidentCount() {
+        return resident.size();
+    }
+
+    public synchronized long getLoads() {
+        return loads;
+    }
+
+    // Bytes of partition files read by loads so far.
+    public synchronized long getBytesLoaded() {
+        return bytesLoaded;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    // Partitions whose torn footer was rebuilt when the store was opened.
+    public int getRepaired() {
+        return repaired;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "Partitions: " + partitions.size() + " (" + granularity.name().toLowerCase() + ") | Resident: "
+                + resident.size() + "/" + maxResident + " | Loads: " + loads + " | Evictions: " + evictions;
+    }
+}
@@ -0,0 +1,73 @@
+package com.pluralsight;
+
+import java.util.Arrays;
+
+/*
+ * Set operations on sorted row id arrays (posting lists).
+ */
+public final class Postings {
+
+    private Postings() {
+    }
+
+    //INTERSECT-Rows present in both sorted arrays. Gallops through the longer one when the sizes differ a lot.
+    public static int[] intersect(int[] a, int[] b) {
+        if (a.length > b.length) {
+            int[] swap = a;
+            a = b;
+            b = swap;
+        }
+        int[] result = new int[a.length];
+        int count = 0;
+        int j = 0;
+        for (int i = 0; i < a.length && j < b.length; i++) {
+            int value = a[i];
+            j = gallop(b, j, value);
+            if (j < b.length && b[j] == value) {
+                result[count++] = value;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    //UNION-Sorted union of several sorted arrays.
+    public static int[] union(int[][] lists) {
+        int total = 0;
+        for (int[] list : lists) {
+            total += list.length;
+        }
+        int[] result = new int[total];
+        int offset = 0;
+        for (int[] list : lists) {
+            System.arraycopy(list, 0, result, offset, list.length);
+            offset += list.length;
+        }
+        if (lists.length > 1) {
+            Arrays.sort(result);
+        }
+        return result;
+    }
+
+    // First position at or after from whose value is >= target.
+    private static int gallop(int[] values, int from, int target) {
+        int step = 1;
+        int low = from;
+        int high = from;
+        while (high < values.length && values[high] < target) {
+            low = high + 1;
+            high += step;
+            step <<= 1;
+        }
+        high = Math.min(high, values.length);
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (values[mid] < target) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
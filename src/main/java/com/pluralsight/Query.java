@@ -0,0 +1,304 @@
+package com.pluralsight;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/*
+ * A filter over ledger rows, built from predicates on date, time, description, vendor and
+ * amount combined with and / or / not:
+ *
+ *   Query.and(Query.dateBetween(start, end), Query.vendor("Amazon"), Query.not(Query.amountAtLeast(0)))
+ *
+ * A Query is only a description; QueryPlan.compile turns it into a plan for one ledger and
+ * runs it. Queries are immutable, and equal queries have equal text (toString), so the text
+ * can be used as a key. Nested and/or nodes are flattened when they are built and their parts
+ * sorted by text, so and(a, b) and and(b, a) are the same query. The planner picks its own
+ * evaluation order, so the sort costs nothing at run time.
+ */
+public abstract class Query {
+    // Open ends for date ranges: far outside any real date, but still fine for epoch day math.
+    static final int MIN_DAY = Integer.MIN_VALUE >> 1;
+    static final int MAX_DAY = Integer.MAX_VALUE >> 1;
+
+    private Query() {
+    }
+
+    /* ------------------------------------------------------------------
+       Predicates
+       ------------------------------------------------------------------ */
+    //ALL-Matches every row.
+    public static Query all() {
+        return new And(new Query[0]);
+    }
+
+    //DATE BETWEEN-Rows dated from start to end, inclusive. A null end is open.
+    public static Query dateBetween(LocalDate start, LocalDate end) {
+        return new DateRange(start == null ? MIN_DAY : (int) start.toEpochDay(), end == null ? MAX_DAY : (int) end.toEpochDay());
+    }
+
+    //TIME BETWEEN-Rows whose time of day is from start to end, inclusive. A null end is open.
+    public static Query timeBetween(LocalTime start, LocalTime end) {
+        return new TimeRange(start == null ? 0 : start.toSecondOfDay(), end == null ? 86_399 : end.toSecondOfDay());
+    }
+
+    //DESCRIPTION-Rows whose description equals the value, ignoring case.
+    public static Query description(String value) {
+        return new Text(Field.DESCRIPTION, value);
+    }
+
+    //VENDOR-Rows whose vendor equals the value, ignoring case.
+    public static Query vendor(String value) {
+        return new Text(Field.VENDOR, value);
+    }
+
+    //AMOUNT BETWEEN-Rows whose amount in cents is from minCents to maxCents, inclusive.
+    public static Query amountBetween(long minCents, long maxCents) {
+        return new AmountRange(minCents, maxCents);
+    }
+
+    public static Query amountEquals(long cents) {
+        return new AmountRange(cents, cents);
+    }
+
+    public static Query amountAtLeast(long minCents) {
+        return new AmountRange(minCents, Long.MAX_VALUE);
+    }
+
+    public static Query amountAtMost(long maxCents) {
+        return new AmountRange(Long.MIN_VALUE, maxCents);
+    }
+
+    /* ------------------------------------------------------------------
+       Combinators
+       ------------------------------------------------------------------ */
+    public static Query and(Query... parts) {
+        return and(Arrays.asList(parts));
+    }
+
+    public static Query and(List<Query> parts) {
+        List<Query> flat = new ArrayList<>();
+        for (Query part : parts) {
+            if (part instanceof And) {
+                flat.addAll(Arrays.asList(((And) part).parts));
+            } else {
+                flat.add(part);
+            }
+        }
+        return flat.size() == 1 ? flat.get(0) : new And(canonical(flat));
+    }
+
+    public static Query or(Query... parts) {
+        return or(Arrays.asList(parts));
+    }
+
+    public static Query or(List<Query> parts) {
+        List<Query> flat = new ArrayList<>();
+        for (Query part : parts) {
+            if (part instanceof Or) {
+                flat.addAll(Arrays.asList(((Or) part).parts));
+            } else {
+                flat.add(part);
+            }
+        }
+        return flat.size() == 1 ? flat.get(0) : new Or(canonical(flat));
+    }
+
+    // Parts in text order, so the same parts in any order give the same and/or text.
+    private static Query[] canonical(List<Query> parts) {
+        Query[] sorted = parts.toArray(new Query[0]);
+        Arrays.sort(sorted, Comparator.comparing(Query::toString));
+        return sorted;
+    }
+
+    public static Query not(Query part) {
+        return part instanceof Not ? ((Not) part).part : new Not(part);
+    }
+
+    //MATCHES-Checks one row directly, without planning. Used to test single new rows, e.g. for cache invalidation.
+    public abstract boolean matches(Ledger ledger, int row);
+
+    /* ------------------------------------------------------------------
+       Identity
+       ------------------------------------------------------------------ */
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof Query && toString().equals(other.toString());
+    }
+
+    @Override
+    public int hashCode() {
+        return toString().hashCode();
+    }
+
+    /* ------------------------------------------------------------------
+       Nodes (read by QueryPlan)
+       ------------------------------------------------------------------ */
+    enum Field { DESCRIPTION, VENDOR }
+
+    static final class DateRange extends Query {
+        final int startDay;
+        final int endDay;
+
+        DateRange(int startDay, int endDay) {
+            this.startDay = startDay;
+            this.endDay = endDay;
+        }
+
+        @Override
+        public boolean matches(Ledger ledger, int row) {
+            int day = ledger.getEpochDay(row);
+            return day >= startDay && day <= endDay;
+        }
+
+        @Override
+        public String toString() {
+            return "date[" + (startDay == MIN_DAY ? "" : LocalDate.ofEpochDay(startDay)) + ".."
+                    + (endDay == MAX_DAY ? "" : LocalDate.ofEpochDay(endDay)) + "]";
+        }
+    }
+
+    static final class TimeRange extends Query {
+        final int startSecond;
+        final int endSecond;
+
+        TimeRange(int startSecond, int endSecond) {
+            this.startSecond = startSecond;
+            this.endSecond = endSecond;
+        }
+
+        @Override
+        public boolean matches(Ledger ledger, int row) {
+            int second = ledger.getSecondOfDay(row);
+            return second >= startSecond && second <= endSecond;
+        }
+
+        @Override
+        public String toString() {
+            return "time[" + LocalTime.ofSecondOfDay(startSecond) + ".." + LocalTime.ofSecondOfDay(endSecond) + "]";
+        }
+    }
+
+    static final class Text extends Query {
+        final Field field;
+        final String value;
+        final String folded;
+
+        Text(Field field, String value) {
+            this.field = field;
+            this.value = value;
+            this.folded = TextIndex.fold(value);
+        }
+
+        @Override
+        public boolean matches(Ledger ledger, int row) {
+            String text = field == Field.VENDOR ? ledger.getVendor(row) : ledger.getDescription(row);
+            return TextIndex.fold(text).equals(folded);
+        }
+
+        @Override
+        public String toString() {
+            return field.name().toLowerCase() + "='" + folded.replace("'", "''") + "'";
+        }
+    }
+
+    static final class AmountRange extends Query {
+        final long minCents;
+        final long maxCents;
+
+        AmountRange(long minCents, long maxCents) {
+            this.minCents = minCents;
+            this.maxCents = maxCents;
+        }
+
+        @Override
+        public boolean matches(Ledger ledger, int row) {
+            long cents = ledger.getAmountCents(row);
+            return cents >= minCents && cents <= maxCents;
+        }
+
+        @Override
+        public String toString() {
+            return "amount[" + (minCents == Long.MIN_VALUE ? "" : Money.format(minCents)) + ".."
+                    + (maxCents == Long.MAX_VALUE ? "" : Money.format(maxCents)) + "]";
+        }
+    }
+
+    static final class And extends Query {
+        final Query[] parts;
+
+        And(Query[] parts) {
+            this.parts = parts;
+        }
+
+        @Override
+        public boolean matches(Ledger ledger, int row) {
+            for (Query part : parts) {
+                if (!part.matches(ledger, row)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return parts.length == 0 ? "all" : join("and", parts);
+        }
+    }
+
+    static final class Or extends Query {
+        final Query[] parts;
+
+        Or(Query[] parts) {
+            this.parts = parts;
+        }
+
+        @Override
+        public boolean matches(Ledger ledger, int row) {
+            for (Query part : parts) {
+                if (part.matches(ledger, row)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            return parts.length == 0 ? "none" : join("or", parts);
+        }
+    }
+
+    static final class Not extends Query {
+        final Query part;
+
+        Not(Query part) {
+            this.part = part;
+        }
+
+        @Override
+        public boolean matches(Ledger ledger, int row) {
+            return !part.matches(ledger, row);
+        }
+
+        @Override
+        public String toString() {
+            return "not(" + part + ")";
+        }
+    }
+
+    private static String join(String operator, Query[] parts) {
+        StringBuilder text = new StringBuilder(operator).append('(');
+        for (int i = 0; i < parts.length; i++) {
+            if (i > 0) {
+                text.append(", ");
+            }
+            text.append(parts[i]);
+        }
+        return text.append(')').toString();
+    }
+}
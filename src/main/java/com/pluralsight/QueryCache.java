@@ -0,0 +1,210 @@
+package com.pluralsight;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Bounded cache of query results (row ids in row order) for the reports and custom search.
+ *
+ * Entries are keyed on the Query's canonical text: values are case-folded and and/or parts
+ * are sorted when the query is built, so "vendor = AMAZON and date in January" and
+ * "date in January and vendor = amazon" share one entry. The least recently used entry is
+ * dropped once there are more than maxEntries entries or more than maxRows cached row ids.
+ *
+ * Invalidation is per row: after an append, invalidate(row) drops only the entries whose
+ * query matches the new row (its date falls in the range, its vendor is the one asked for,
+ * and so on). Everything else stays cached, because a row that does not match cannot change
+ * the result. Each entry also remembers the ledger size it was computed at, and rows added
+ * after that are checked again on a hit, so a result computed while an append was in flight
+ * is never served without the new row.
+ */
+public class QueryCache {
+    // A hit re-checks at most this many rows appended since the entry was computed; past that it recomputes.
+    private static final int MAX_RECHECK = 4096;
+
+    private final Ledger ledger;
+    private final int maxEntries;
+    private final long maxRows;
+    private final LinkedHashMap<Query, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedRows;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private final LongAdder rowsScanned = new LongAdder();
+
+    private static final class Entry {
+        final int[] rows;
+        final int validThrough; // ledger size the rows were computed at
+
+        Entry(int[] rows, int validThrough) {
+            this.rows = rows;
+            this.validThrough = validThrough;
+        }
+    }
+
+    public QueryCache(Ledger ledger, int maxEntries, long maxRows) {
+        this.ledger = ledger;
+        this.maxEntries = maxEntries;
+        this.maxRows = maxRows;
+    }
+
+    /* ------------------------------------------------------------------
+       Lookups
+       ------------------------------------------------------------------ */
+    //ROWS-Row ids matching the query, from the cache or from a new plan. The array is shared; do not change it.
+    public int[] rows(Query query) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(query);
+        }
+        if (entry != null) {
+            int size = ledger.size();
+            if (unchangedSince(query, entry.validThrough, size)) {
+                hits.increment();
+                if (size > entry.validThrough) {
+                    replace(query, entry, new Entry(entry.rows, size));
+                }
+                return entry.rows;
+            }
+            synchronized (this) {
+                if (entries.get(query) == entry) {
+                    remove(query);
+                    invalidations.increment();
+                }
+            }
+        }
+        misses.increment();
+        QueryPlan plan = QueryPlan.compile(ledger, query);
+        int[] rows = plan.run();
+        rowsScanned.add(plan.getCandidateRows());
+        put(query, new Entry(rows, plan.getLedgerRows()));
+        return rows;
+    }
+
+    // True when none of the rows from `from` up to `to` matches the query.
+    private boolean unchangedSince(Query query, int from, int to) {
+        if (to - from > MAX_RECHECK) {
+            return false;
+        }
+        for (int row = from; row < to; row++) {
+            if (query.matches(ledger, row)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /* ------------------------------------------------------------------
+       Invalidation
+       ------------------------------------------------------------------ */
+    //INVALIDATE-Drops the cached results that the appended row belongs to. Call after every append.
+    public synchronized void invalidate(int row) {
+        Iterator<Map.Entry<Query, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Query, Entry> cached = it.next();
+            if (row >= cached.getValue().validThrough && cached.getKey().matches(ledger, row)) {
+                cachedRows -= cached.getValue().rows.length;
+                it.remove();
+                invalidations.increment();
+            }
+        }
+    }
+
+    //INVALIDATE RANGE-invalidate(row) for rows fromRow up to toRow; a batch too large to check row by row clears the cache.
+    public synchronized void invalidate(int fromRow, int toRow) {
+        if (toRow - fromRow > MAX_RECHECK) {
+            invalidations.add(entries.size());
+            clear();
+            return;
+        }
+        for (int row = fromRow; row < toRow; row++) {
+            invalidate(row);
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        cachedRows = 0;
+    }
+
+    /* ------------------------------------------------------------------
+       Bookkeeping
+       ------------------------------------------------------------------ */
+    private synchronized void put(Query query, Entry entry) {
+        if (entry.rows.length > maxRows) {
+            return;
+        }
+        Entry old = entries.put(query, entry);
+        if (old != null) {
+            cachedRows -= old.rows.length;
+        }
+        cachedRows += entry.rows.length;
+        Iterator<Map.Entry<Query, Entry>> eldest = entries.entrySet().iterator();
+        while (entries.size() > maxEntries || cachedRows > maxRows) {
+            Map.Entry<Query, Entry> victim = eldest.next();
+            cachedRows -= victim.getValue().rows.length;
+            eldest.remove();
+            evictions.increment();
+        }
+    }
+
+    private synchronized void replace(Query query, Entry expected, Entry entry) {
+        if (entries.get(query) == expected) {
+            entries.put(query, entry);
+        }
+    }
+
+    private void remove(Query query) {
+        Entry old = entries.remove(query);
+        if (old != null) {
+            cachedRows -= old.rows.length;
+        }
+    }
+
+    /* ------------------------------------------------------------------
+       Counters
+       ------------------------------------------------------------------ */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    // Entries dropped to stay within maxEntries / maxRows.
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    // Entries dropped because an appended row changed their result.
+    public long getInvalidations() {
+        return invalidations.sum();
+    }
+
+    // Rows the plans behind the misses looked at; hits scan nothing.
+    public long getRowsScanned() {
+        return rowsScanned.sum();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getCachedRows() {
+        return cachedRows;
+    }
+
+    @Override
+    public String toString() {
+        long hitCount = getHits();
+        long lookups = hitCount + getMisses();
+        return String.format("Entries: %d (%d rows) | Hits: %d | Misses: %d | Hit Rate: %.1f%% | Evictions: %d | Invalidations: %d",
+                size(), getCachedRows(), hitCount, getMisses(), lookups == 0 ? 0.0 : 100.0 * hitCount / lookups,
+                getEvictions(), getInvalidations());
+    }
+}
@@ -0,0 +1,494 @@
+package com.pluralsight;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/*
+ * A Query compiled against one ledger.
+ *
+ * Compiling does three things:
+ *
+ *   estimate  every predicate gets an estimated selectivity (share of rows it keeps). Date,
+ *             vendor and description predicates are counted exactly from their indexes;
+ *             time and amount predicates are checked against a sample of SAMPLE_ROWS evenly
+ *             spaced rows. and / or / not combine the estimates as if independent.
+ *   source    if an indexed predicate (or an or of them) that every row must match keeps
+ *             at most INDEX_FRACTION of the rows, its row ids from the index are the
+ *             candidates; a second selective index is intersected in. Otherwise every row is
+ *             a candidate and the ledger is scanned.
+ *   filter    the predicates the source does not already guarantee are fused into one row
+ *             test over the ledger columns. An and checks its most selective part first and
+ *             an or its least selective one, so most rows are decided by the first check.
+ *
+ * run() applies the filter to the candidates, splitting the work across the common ForkJoin
+ * pool once there are at least PARALLEL_MIN_ROWS of them. Rows always come back in row id
+ * (file) order, and a plan only ever sees the rows the ledger held when it was compiled.
+ */
+public class QueryPlan {
+    private static final int SAMPLE_ROWS = 512;
+    private static final double INDEX_FRACTION = 0.25;
+    // A second index is only intersected in when its posting list is at most this many times
+    // longer than the candidates; copying a huge list costs more than checking each candidate.
+    private static final int INTERSECT_RATIO = 4;
+    private static final int PARALLEL_MIN_ROWS = 1 << 16;
+    private static final int CHUNK_ROWS = 1 << 14;
+
+    // One fused row test; the columns it reads are captured when the plan is compiled.
+    private interface RowFilter {
+        boolean test(int row);
+    }
+
+    private final Ledger.Columns columns;
+    private final Query query;
+    private final int[] candidates; // null means every row below columns.size
+    private final RowFilter filter; // null means every candidate matches
+    private final double selectivity;
+    private final String description;
+
+    private QueryPlan(Ledger.Columns columns, Query query, int[] candidates, RowFilter filter, double selectivity,
+                      String description) {
+        this.columns = columns;
+        this.query = query;
+        this.candidates = candidates;
+        this.filter = filter;
+        this.selectivity = selectivity;
+        this.description = description;
+    }
+
+    //COMPILE-Plans the query against the rows the ledger holds right now.
+    public static QueryPlan compile(Ledger ledger, Query query) {
+        return new Planner(ledger, query).plan();
+    }
+
+    /* ------------------------------------------------------------------
+       Running
+       ------------------------------------------------------------------ */
+    //RUN-Row ids of every matching row, in row order.
+    public int[] run() {
+        int count = candidates == null ? columns.size : candidates.length;
+        if (filter == null) {
+            return candidates != null ? candidates : allRows(count);
+        }
+        if (count >= PARALLEL_MIN_ROWS && ForkJoinPool.getCommonPoolParallelism() > 1) {
+            return runParallel(count);
+        }
+        return scan(0, count);
+    }
+
+    //PAGE-Up to limit matching row ids at or after fromRow, in row order. Stops as soon as the page is full.
+    public int[] page(int fromRow, int limit) {
+        int[] matches = new int[Math.max(0, limit)];
+        int found = 0;
+        if (candidates == null) {
+            for (int row = Math.max(0, fromRow); row < columns.size && found < limit; row++) {
+                if (filter == null || filter.test(row)) {
+                    matches[found++] = row;
+                }
+            }
+        } else {
+            int start = Arrays.binarySearch(candidates, fromRow);
+            for (int i = start >= 0 ? start : -start - 1; i < candidates.length && found < limit; i++) {
+                int row = candidates[i];
+                if (filter == null || filter.test(row)) {
+                    matches[found++] = row;
+                }
+            }
+        }
+        return found == matches.length ? matches : Arrays.copyOf(matches, found);
+    }
+
+    private int[] scan(int from, int to) {
+        int[] matches = new int[to - from];
+        int found = 0;
+        if (candidates == null) {
+            for (int row = from; row < to; row++) {
+                if (filter.test(row)) {
+                    matches[found++] = row;
+                }
+            }
+        } else {
+            for (int i = from; i < to; i++) {
+                int row = candidates[i];
+                if (filter.test(row)) {
+                    matches[found++] = row;
+                }
+            }
+        }
+        return found == matches.length ? matches : Arrays.copyOf(matches, found);
+    }
+
+    // Each chunk is scanned by its own task; the results are joined in chunk order once at the end.
+    private int[] runParallel(int count) {
+        int chunks = (count + CHUNK_ROWS - 1) / CHUNK_ROWS;
+        int[][] results = new int[chunks][];
+        ForkJoinPool.commonPool().invoke(new ScanTask(results, 0, chunks, count));
+        int total = 0;
+        for (int[] result : results) {
+            total += result.length;
+        }
+        int[] matches = new int[total];
+        int offset = 0;
+        for (int[] result : results) {
+            System.arraycopy(result, 0, matches, offset, result.length);
+            offset += result.length;
+        }
+        return matches;
+    }
+
+    private final class ScanTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int[][] results;
+        private final int fromChunk;
+        private final int toChunk;
+        private final int count;
+
+        ScanTask(int[][] results, int fromChunk, int toChunk, int count) {
+            this.results = results;
+            this.fromChunk = fromChunk;
+            this.toChunk = toChunk;
+            this.count = count;
+        }
+
+        @Override
+        protected void compute() {
+            if (toChunk - fromChunk == 1) {
+                int from = fromChunk * CHUNK_ROWS;
+                results[fromChunk] = scan(from, Math.min(count, from + CHUNK_ROWS));
+                return;
+            }
+            int middle = (fromChunk + toChunk) >>> 1;
+            invokeAll(new ScanTask(results, fromChunk, middle, count), new ScanTask(results, middle, toChunk, count));
+        }
+    }
+
+    private static int[] allRows(int count) {
+        int[] rows = new int[count];
+        for (int row = 0; row < count; row++) {
+            rows[row] = row;
+        }
+        return rows;
+    }
+
+    /* ------------------------------------------------------------------
+       Plan details
+       ------------------------------------------------------------------ */
+    public Query getQuery() {
+        return query;
+    }
+
+    // Ledger size when the plan was compiled; rows appended later are never part of its results.
+    public int getLedgerRows() {
+        return columns.size;
+    }
+
+    // Rows the plan looks at: the index candidates, or the whole ledger for a scan.
+    public int getCandidateRows() {
+        return candidates == null ? columns.size : candidates.length;
+    }
+
+    public int getEstimatedRows() {
+        return (int) Math.round(selectivity * columns.size);
+    }
+
+    //EXPLAIN-One line describing the chosen source, the fused filter and the estimates.
+    public String explain() {
+        return description;
+    }
+
+    @Override
+    public String toString() {
+        return explain();
+    }
+
+    /* ------------------------------------------------------------------
+       Planner
+       ------------------------------------------------------------------ */
+    private static final class Planner {
+        private final Ledger ledger;
+        private final Query query;
+        private final Ledger.Columns columns;
+        private final int size;
+        private final IdentityHashMap<Query, Double> estimates = new IdentityHashMap<>();
+
+        Planner(Ledger ledger, Query query) {
+            this.ledger = ledger;
+            this.query = query;
+            this.columns = ledger.columns();
+            this.size = columns.size;
+        }
+
+        QueryPlan plan() {
+            double rootSelectivity = estimate(query);
+            List<Query> required = query instanceof Query.And
+                    ? new ArrayList<>(Arrays.asList(((Query.And) query).parts))
+                    : new ArrayList<>(List.of(query));
+
+            // Indexed parts every row must match, most selective first.
+            List<Query> indexed = new ArrayList<>();
+            for (Query part : required) {
+                if (indexable(part)) {
+                    indexed.add(part);
+                }
+            }
+            indexed.sort(Comparator.comparingDouble(this::estimate));
+
+            int[] candidates = null;
+            StringBuilder source = new StringBuilder();
+            if (!indexed.isEmpty() && estimate(indexed.get(0)) <= INDEX_FRACTION) {
+                Query driver = indexed.get(0);
+                candidates = indexRows(driver);
+                required.remove(driver);
+                source.append("index ").append(driver);
+                for (int i = 1; i < indexed.size(); i++) {
+                    Query next = indexed.get(i);
+                    if (estimate(next) * size > (double) candidates.length * INTERSECT_RATIO) {
+                        break;
+                    }
+                    candidates = Postings.intersect(candidates, indexRows(next));
+                    required.remove(next);
+                    source.append(" & ").append(next);
+                }
+                source.append(" -> ").append(candidates.length).append(" candidates");
+            } else {
+                source.append("scan ").append(size).append(" rows");
+                if (size >= PARALLEL_MIN_ROWS && ForkJoinPool.getCommonPoolParallelism() > 1) {
+                    source.append(" in parallel");
+                }
+            }
+
+            Query residual = Query.and(required);
+            RowFilter filter = compile(residual);
+            if (filter != null) {
+                source.append(", filter ").append(ordered(residual));
+            }
+            source.append(", estimated ").append(Math.round(rootSelectivity * size)).append(" rows");
+            return new QueryPlan(columns, query, candidates, filter, rootSelectivity, source.toString());
+        }
+
+        /* ---- estimates ---- */
+        private double estimate(Query query) {
+            Double known = estimates.get(query);
+            if (known != null) {
+                return known;
+            }
+            double estimate;
+            if (size == 0) {
+                estimate = 0;
+            } else if (query instanceof Query.DateRange) {
+                Query.DateRange range = (Query.DateRange) query;
+                estimate = Math.min(size, ledger.getDateIndex().count(range.startDay, range.endDay)) / (double) size;
+            } else if (query instanceof Query.Text) {
+                Query.Text text = (Query.Text) query;
+                estimate = Math.min(size, index(text).count(text.value)) / (double) size;
+            } else if (query instanceof Query.And) {
+                estimate = 1;
+                for (Query part : ((Query.And) query).parts) {
+                    estimate *= estimate(part);
+                }
+            } else if (query instanceof Query.Or) {
+                double none = 1;
+                for (Query part : ((Query.Or) query).parts) {
+                    none *= 1 - estimate(part);
+                }
+                estimate = 1 - none;
+            } else if (query instanceof Query.Not) {
+                estimate = 1 - estimate(((Query.Not) query).part);
+            } else {
+                estimate = sample(query);
+            }
+            estimates.put(query, estimate);
+            return estimate;
+        }
+
+        // Share of evenly spaced sample rows the predicate keeps, for columns without an index.
+        private double sample(Query query) {
+            RowFilter test = compile(query);
+            int samples = Math.min(size, SAMPLE_ROWS);
+            int kept = 0;
+            for (int i = 0; i < samples; i++) {
+                if (test.test((int) ((long) i * size / samples))) {
+                    kept++;
+                }
+            }
+            return kept / (double) samples;
+        }
+
+        /* ---- index sources ---- */
+        private boolean indexable(Query query) {
+            if (query instanceof Query.DateRange || query instanceof Query.Text) {
+                return true;
+            }
+            if (query instanceof Query.Or) {
+                for (Query part : ((Query.Or) query).parts) {
+                    if (!indexable(part)) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+            return false;
+        }
+
+        // Sorted row ids below size matching an indexable query.
+        private int[] indexRows(Query query) {
+            if (query instanceof Query.DateRange) {
+                Query.DateRange range = (Query.DateRange) query;
+                int[] rows = ledger.getDateIndex().range(range.startDay, range.endDay, size);
+                for (int i = 1; i < rows.length; i++) {
+                    if (rows[i] < rows[i - 1]) {
+                        // Out-of-order rows were added; the index lists them by date, plans use row order.
+                        Arrays.sort(rows);
+                        break;
+                    }
+                }
+                return rows;
+            }
+            if (query instanceof Query.Text) {
+                Query.Text text = (Query.Text) query;
+                return index(text).lookup(text.value, size);
+            }
+            Query[] parts = ((Query.Or) query).parts;
+            int[][] lists = new int[parts.length][];
+            for (int i = 0; i < parts.length; i++) {
+                lists[i] = indexRows(parts[i]);
+            }
+            return distinct(Postings.union(lists));
+        }
+
+        private TextIndex index(Query.Text text) {
+            return text.field == Query.Field.VENDOR ? ledger.getVendorIndex() : ledger.getDescriptionIndex();
+        }
+
+        // Overlapping or parts put a row in the union more than once.
+        private static int[] distinct(int[] sorted) {
+            int count = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                if (i == 0 || sorted[i] != sorted[i - 1]) {
+                    sorted[count++] = sorted[i];
+                }
+            }
+            return count == sorted.length ? sorted : Arrays.copyOf(sorted, count);
+        }
+
+        /* ---- fused filter ---- */
+        // Null when the query matches every row.
+        private RowFilter compile(Query query) {
+            if (query instanceof Query.DateRange) {
+                int[] dates = columns.dates;
+                int start = ((Query.DateRange) query).startDay;
+                int end = ((Query.DateRange) query).endDay;
+                return row -> {
+                    int day = dates[row];
+                    return day >= start && day <= end;
+                };
+            }
+            if (query instanceof Query.TimeRange) {
+                int[] times = columns.times;
+                int start = ((Query.TimeRange) query).startSecond;
+                int end = ((Query.TimeRange) query).endSecond;
+                return row -> {
+                    int second = times[row];
+                    return second >= start && second <= end;
+                };
+            }
+            if (query instanceof Query.AmountRange) {
+                long[] amounts = columns.amounts;
+                long min = ((Query.AmountRange) query).minCents;
+                long max = ((Query.AmountRange) query).maxCents;
+                return row -> {
+                    long cents = amounts[row];
+                    return cents >= min && cents <= max;
+                };
+            }
+            if (query instanceof Query.Text) {
+                return textFilter((Query.Text) query);
+            }
+            if (query instanceof Query.Not) {
+                RowFilter part = compile(((Query.Not) query).part);
+                return part == null ? row -> false : row -> !part.test(row);
+            }
+            boolean and = query instanceof Query.And;
+            Query[] parts = and ? ((Query.And) ordered(query)).parts : ((Query.Or) ordered(query)).parts;
+            List<RowFilter> filters = new ArrayList<>();
+            for (Query part : parts) {
+                RowFilter filter = compile(part);
+                if (filter == null) {
+                    if (!and) {
+                        return null; // one part matches everything, so the or does too
+                    }
+                    continue;
+                }
+                filters.add(filter);
+            }
+            if (filters.isEmpty()) {
+                return and ? null : row -> false;
+            }
+            if (filters.size() == 1) {
+                return filters.get(0);
+            }
+            RowFilter first = filters.get(0);
+            RowFilter second = filters.get(1);
+            if (filters.size() == 2) {
+                return and ? row -> first.test(row) && second.test(row) : row -> first.test(row) || second.test(row);
+            }
+            RowFilter[] all = filters.toArray(new RowFilter[0]);
+            if (and) {
+                return row -> {
+                    for (RowFilter filter : all) {
+                        if (!filter.test(row)) {
+                            return false;
+                        }
+                    }
+                    return true;
+                };
+            }
+            return row -> {
+                for (RowFilter filter : all) {
+                    if (filter.test(row)) {
+                        return true;
+                    }
+                }
+                return false;
+            };
+        }
+
+        // Equality ignoring case, decided once per distinct string id and remembered. Parallel
+        // chunks may decide the same id at the same time; they store the same answer.
+        private RowFilter textFilter(Query.Text text) {
+            int[] ids = text.field == Query.Field.VENDOR ? columns.vendors : columns.descriptions;
+            String[] strings = columns.strings;
+            String folded = text.folded;
+            byte[] known = new byte[columns.stringCount]; // 0 unknown, 1 match, 2 no match
+            return row -> {
+                int id = ids[row];
+                byte answer = known[id];
+                if (answer == 0) {
+                    answer = TextIndex.fold(strings[id]).equals(folded) ? (byte) 1 : (byte) 2;
+                    known[id] = answer;
+                }
+                return answer == 1;
+            };
+        }
+
+        // and / or with its parts in evaluation order: and rejects early, or accepts early.
+        private Query ordered(Query query) {
+            if (query instanceof Query.And) {
+                Query[] parts = ((Query.And) query).parts.clone();
+                Arrays.sort(parts, Comparator.comparingDouble(this::estimate));
+                return parts.length == 0 ? query : new Query.And(parts);
+            }
+            if (query instanceof Query.Or) {
+                Query[] parts = ((Query.Or) query).parts.clone();
+                Arrays.sort(parts, Comparator.comparingDouble(this::estimate).reversed());
+                return parts.length == 0 ? query : new Query.Or(parts);
+            }
+            return query;
+        }
+    }
+}
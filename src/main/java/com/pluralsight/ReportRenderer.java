@@ -0,0 +1,241 @@
+package com.pluralsight;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/*
+ * Writes report rows in the same fixed-width layout as
+ *
+ *   printf("%-12s %-10s %-30s %-20s %10.2f \n", date, time, description, vendor, amount)
+ *
+ * but without a format string. Each row is built straight into one reusable byte buffer,
+ * and the buffer goes to the output in large chunks instead of one synchronized printf per row.
+ * Descriptions and vendors are encoded once per string table id, and the date text is
+ * reused while consecutive rows share a day.
+ *
+ * With a page size above zero, the renderer stops after every page and asks the Pager
+ * whether to go on, so a huge result never floods the terminal in one go.
+ */
+public class ReportRenderer {
+    private static final int BUFFER_BYTES = 64 * 1024;
+    private static final int DATE_WIDTH = 12;
+    private static final int TIME_WIDTH = 10;
+    private static final int DESCRIPTION_WIDTH = 30;
+    private static final int VENDOR_WIDTH = 20;
+    private static final int AMOUNT_WIDTH = 10;
+
+    // Asked after each full page; returning false ends the report.
+    public interface Pager {
+        boolean more(int rowsShown);
+    }
+
+    private final OutputStream out;
+    private final Charset charset;
+    private final int pageSize;
+    private final Pager pager;
+
+    private byte[] buffer = new byte[BUFFER_BYTES];
+    private int position;
+    private int rowsShown;
+    private long bytesWritten;
+    private boolean stopped;
+
+    // String table id -> encoded bytes, filled on first use. Ids belong to one table, so the
+    // cache starts over when rows of another ledger (another partition) are rendered.
+    private StringTable encodedTable;
+    private byte[][] encoded = new byte[64][];
+    private int[] charLengths = new int[64];
+
+    private int cachedDay = Integer.MIN_VALUE;
+    private byte[] cachedDate;
+
+    public ReportRenderer(OutputStream out, Charset charset) {
+        this(out, charset, 0, null);
+    }
+
+    public ReportRenderer(OutputStream out, Charset charset, int pageSize, Pager pager) {
+        this.out = out;
+        this.charset = charset;
+        this.pageSize = pager == null ? 0 : pageSize;
+        this.pager = pager;
+    }
+
+    /* ------------------------------------------------------------------
+       Rows
+       ------------------------------------------------------------------ */
+    //ROW-Renders one ledger row. Returns false once the reader asked to stop paging.
+    public boolean row(Ledger ledger, int row) {
+        if (stopped) {
+            return false;
+        }
+        StringTable strings = ledger.getStrings();
+        int descriptionId = ledger.getDescriptionId(row);
+        int vendorId = ledger.getVendorId(row);
+        byte[] description = encode(descriptionId, strings);
+        byte[] vendor = encode(vendorId, strings);
+        byte[] date = date(ledger.getEpochDay(row));
+
+        int length = Math.max(DATE_WIDTH, date.length) + 1 + TIME_WIDTH + 1
+                + Math.max(DESCRIPTION_WIDTH, description.length) + 1
+                + Math.max(VENDOR_WIDTH, vendor.length) + 1
+                + Math.max(AMOUNT_WIDTH, 21) + 2;
+        ensure(length);
+
+        putPadded(date, date.length, DATE_WIDTH);
+        buffer[position++] = ' ';
+        putTime(ledger.getSecondOfDay(row));
+        buffer[position++] = ' ';
+        putPadded(description, charLengths[descriptionId], DESCRIPTION_WIDTH);
+        buffer[position++] = ' ';
+        putPadded(vendor, charLengths[vendorId], VENDOR_WIDTH);
+        buffer[position++] = ' ';
+        putAmount(ledger.getAmountCents(row));
+        buffer[position++] = ' ';
+        buffer[position++] = '\n';
+
+        rowsShown++;
+        if (pageSize > 0 && rowsShown % pageSize == 0) {
+            flush();
+            if (!pager.more(rowsShown)) {
+                stopped = true;
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //ROWS-Renders the given row ids in order, stopping early if the reader stops paging.
+    public void rows(Ledger ledger, int[] rows) {
+        for (int row : rows) {
+            if (!row(ledger, row)) {
+                return;
+            }
+        }
+    }
+
+    //RANGE-Renders rows [fromRow, toRow) in row order.
+    public void rows(Ledger ledger, int fromRow, int toRow) {
+        for (int row = fromRow; row < toRow; row++) {
+            if (!row(ledger, row)) {
+                return;
+            }
+        }
+    }
+
+    // True once the reader asked to stop paging; later rows are ignored.
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    // Bytes handed to the output stream so far.
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    public int getRowsShown() {
+        return rowsShown;
+    }
+
+    // Writes whatever is buffered. Call once the report is done.
+    public void flush() {
+        try {
+            if (position > 0) {
+                out.write(buffer, 0, position);
+                bytesWritten += position;
+                position = 0;
+            }
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /* ------------------------------------------------------------------
+       Field encoders
+       ------------------------------------------------------------------ */
+    private void ensure(int length) {
+        if (position + length > buffer.length) {
+            try {
+                out.write(buffer, 0, position);
+                bytesWritten += position;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            position = 0;
+        }
+        if (length > buffer.length) {
+            // A single row longer than the whole buffer (a huge description).
+            buffer = new byte[length];
+        }
+    }
+
+    private byte[] encode(int id, StringTable strings) {
+        if (strings != encodedTable) {
+            encodedTable = strings;
+            Arrays.fill(encoded, null);
+        }
+        if (id >= encoded.length) {
+            int capacity = Math.max(id + 1, encoded.length * 2);
+            encoded = Arrays.copyOf(encoded, capacity);
+            charLengths = Arrays.copyOf(charLengths, capacity);
+        }
+        byte[] bytes = encoded[id];
+        if (bytes == null) {
+            String value = strings.get(id);
+            bytes = value.getBytes(charset);
+            encoded[id] = bytes;
+            charLengths[id] = value.length();
+        }
+        return bytes;
+    }
+
+    private byte[] date(int epochDay) {
+        if (epochDay != cachedDay) {
+            cachedDay = epochDay;
+            cachedDate = LocalDate.ofEpochDay(epochDay).toString().getBytes(charset);
+        }
+        return cachedDate;
+    }
+
+    // Left-aligned and padded with spaces to width characters, like %-<width>s.
+    private void putPadded(byte[] bytes, int chars, int width) {
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+        for (int i = chars; i < width; i++) {
+            buffer[position++] = ' ';
+        }
+    }
+
+    // Same text as LocalTime.toString(): HH:mm, plus :ss when the seconds are not zero.
+    private void putTime(int secondOfDay) {
+        int start = position;
+        putTwoDigits(secondOfDay / 3600);
+        buffer[position++] = ':';
+        putTwoDigits(secondOfDay / 60 % 60);
+        int seconds = secondOfDay % 60;
+        if (seconds != 0) {
+            buffer[position++] = ':';
+            putTwoDigits(seconds);
+        }
+        while (position - start < TIME_WIDTH) {
+            buffer[position++] = ' ';
+        }
+    }
+
+    private void putTwoDigits(int value) {
+        buffer[position++] = (byte) ('0' + value / 10);
+        buffer[position++] = (byte) ('0' + value % 10);
+    }
+
+    // Right-aligned cents as a decimal with two places, like %10.2f.
+    private void putAmount(long cents) {
+        for (int i = Money.length(cents); i < AMOUNT_WIDTH; i++) {
+            buffer[position++] = ' ';
+        }
+        position = Money.write(cents, buffer, position);
+    }
+}
@@ -0,0 +1,66 @@
+package com.pluralsight;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Dictionary of interned strings. Every distinct value is stored once and referred to by
+ * a dense int id, so the ledger columns only need to hold ints.
+ *
+ * intern() must be called by one thread at a time (the Ledger calls it under its append
+ * lock); find() and get() can be called from any thread at any time.
+ */
+public class StringTable {
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] values = new String[64];
+    private volatile int size;
+
+    //INTERN-Returns the id of the value, adding it to the table the first time it is seen.
+    public int intern(String value) {
+        Integer existing = ids.get(value);
+        if (existing != null) {
+            return existing;
+        }
+        int id = size;
+        String[] current = values;
+        if (id == current.length) {
+            current = Arrays.copyOf(current, id * 2);
+        }
+        current[id] = value;
+        values = current;
+        ids.put(value, id);
+        size = id + 1;
+        return id;
+    }
+
+    // Returns the id of the value or -1 when it has never been interned.
+    public int find(String value) {
+        Integer id = ids.get(value);
+        return id == null ? -1 : id;
+    }
+
+    public String get(int id) {
+        return values[id];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Backing array; only the first size() entries are set and they never change.
+    String[] values() {
+        return values;
+    }
+
+    // Rough number of bytes held by the table, counting the strings themselves.
+    long estimatedBytes() {
+        int count = size;
+        String[] current = values;
+        long bytes = 16L + current.length * 4L;
+        for (int i = 0; i < count; i++) {
+            // String header + backing array header + Latin-1 payload, plus one HashMap node.
+            bytes += 24 + 16 + current[i].length() + 32;
+        }
+        return bytes + ids.size() * 4L;
+    }
+}
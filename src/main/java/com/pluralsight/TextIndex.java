@@ -0,0 +1,194 @@
+package com.pluralsight;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Inverted index over one text column of a Ledger (vendor or description).
+ *
+ * Values are case-folded the same way equalsIgnoreCase compares them, and every folded key
+ * owns a posting list of the row ids holding it. Rows are appended in id order, so posting
+ * lists are always sorted and can be intersected without sorting.
+ *
+ * When trigrams are enabled, every distinct key is also indexed by its 3-character
+ * substrings, which turns prefix and substring lookups into a few small intersections over
+ * distinct keys instead of a scan over every row.
+ *
+ * add() must be called by one thread at a time (the Ledger's append lock). Lookups can run
+ * alongside it; a key is fully stored before its id can be found, and callers pass a row
+ * limit to leave out rows their view of the ledger does not include yet.
+ */
+public class TextIndex {
+    private final ConcurrentHashMap<String, Integer> keyIds = new ConcurrentHashMap<>();
+    private volatile String[] keys = new String[64];
+    private volatile IntList[] postings = new IntList[64];
+    private volatile int keyCount;
+
+    // String table id -> key id, so folding happens once per distinct string and not per row.
+    private int[] keyOfString = new int[64];
+
+    private final ConcurrentHashMap<Long, IntList> trigrams;
+
+    public TextIndex(boolean withTrigrams) {
+        Arrays.fill(keyOfString, -1);
+        this.trigrams = withTrigrams ? new ConcurrentHashMap<>() : null;
+    }
+
+    //FOLD-Case folding that matches String.equalsIgnoreCase.
+    public static String fold(String value) {
+        StringBuilder folded = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            folded.append(Character.toLowerCase(Character.toUpperCase(value.charAt(i))));
+        }
+        return folded.toString();
+    }
+
+    /* ------------------------------------------------------------------
+       Updates
+       ------------------------------------------------------------------ */
+    public void add(int row, int stringId, StringTable strings) {
+        if (stringId >= keyOfString.length) {
+            int oldLength = keyOfString.length;
+            keyOfString = Arrays.copyOf(keyOfString, Math.max(stringId + 1, oldLength * 2));
+            Arrays.fill(keyOfString, oldLength, keyOfString.length, -1);
+        }
+        int keyId = keyOfString[stringId];
+        if (keyId < 0) {
+            keyId = keyId(fold(strings.get(stringId)));
+            keyOfString[stringId] = keyId;
+        }
+        postings[keyId].add(row);
+    }
+
+    private int keyId(String key) {
+        Integer existing = keyIds.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        int keyId = keyCount;
+        String[] currentKeys = keys;
+        IntList[] currentPostings = postings;
+        if (keyId == currentKeys.length) {
+            currentKeys = Arrays.copyOf(currentKeys, keyId * 2);
+            currentPostings = Arrays.copyOf(currentPostings, keyId * 2);
+        }
+        currentKeys[keyId] = key;
+        currentPostings[keyId] = new IntList();
+        keys = currentKeys;
+        postings = currentPostings;
+        keyCount = keyId + 1;
+        keyIds.put(key, keyId);
+        if (trigrams != null) {
+            for (long trigram : trigramsOf(key)) {
+                trigrams.computeIfAbsent(trigram, t -> new IntList()).add(keyId);
+            }
+        }
+        return keyId;
+    }
+
+    /* ------------------------------------------------------------------
+       Queries
+       ------------------------------------------------------------------ */
+    //LOOKUP-Sorted row ids whose value equals the given one, ignoring case.
+    public int[] lookup(String value) {
+        return lookup(value, Integer.MAX_VALUE);
+    }
+
+    // Same, leaving out rows at or above rowLimit.
+    public int[] lookup(String value, int rowLimit) {
+        Integer keyId = keyIds.get(fold(value));
+        return keyId == null ? new int[0] : postings[keyId].toArrayBelow(rowLimit);
+    }
+
+    // Number of rows holding the value, without copying the posting list.
+    public int count(String value) {
+        Integer keyId = keyIds.get(fold(value));
+        return keyId == null ? 0 : postings[keyId].size();
+    }
+
+    //MATCH-Sorted row ids whose value starts with (prefixOnly) or contains the fragment, ignoring case.
+    public int[] match(String fragment, boolean prefixOnly) {
+        return match(fragment, prefixOnly, Integer.MAX_VALUE);
+    }
+
+    // Same, leaving out rows at or above rowLimit.
+    public int[] match(String fragment, boolean prefixOnly, int rowLimit) {
+        if (trigrams == null) {
+            throw new IllegalStateException("Trigram index is not enabled");
+        }
+        String folded = fold(fragment);
+        int count = keyCount;
+        String[] currentKeys = keys;
+        IntList[] currentPostings = postings;
+        int[] candidates;
+        long[] wanted = trigramsOf(folded);
+        if (wanted.length == 0) {
+            // Fragments shorter than a trigram are checked against every distinct key.
+            candidates = new int[count];
+            for (int i = 0; i < candidates.length; i++) {
+                candidates[i] = i;
+            }
+        } else {
+            candidates = null;
+            for (long trigram : wanted) {
+                IntList keyList = trigrams.get(trigram);
+                if (keyList == null) {
+                    return new int[0];
+                }
+                candidates = candidates == null ? keyList.toArray() : Postings.intersect(candidates, keyList.toArray());
+            }
+        }
+
+        List<int[]> matches = new ArrayList<>();
+        for (int keyId : candidates) {
+            if (keyId >= count) {
+                break; // Added after this lookup started.
+            }
+            String key = currentKeys[keyId];
+            if (prefixOnly ? key.startsWith(folded) : key.contains(folded)) {
+                matches.add(currentPostings[keyId].toArrayBelow(rowLimit));
+            }
+        }
+        return Postings.union(matches.toArray(new int[0][]));
+    }
+
+    public int distinctKeys() {
+        return keyCount;
+    }
+
+    private static long[] trigramsOf(String key) {
+        if (key.length() < 3) {
+            return new long[0];
+        }
+        long[] result = new long[key.length() - 2];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = ((long) key.charAt(i) << 32) | ((long) key.charAt(i + 1) << 16) | key.charAt(i + 2);
+        }
+        Arrays.sort(result);
+        int distinct = 0;
+        for (int i = 0; i < result.length; i++) {
+            if (i == 0 || result[i] != result[i - 1]) {
+                result[distinct++] = result[i];
+            }
+        }
+        return Arrays.copyOf(result, distinct);
+    }
+
+    long estimatedBytes() {
+        int count = keyCount;
+        String[] currentKeys = keys;
+        IntList[] currentPostings = postings;
+        long bytes = keyOfString.length * 4L + currentKeys.length * 8L;
+        for (int i = 0; i < count; i++) {
+            bytes += 64 + currentKeys[i].length() + currentPostings[i].estimatedBytes();
+        }
+        if (trigrams != null) {
+            for (IntList keyList : trigrams.values()) {
+                bytes += 64 + keyList.estimatedBytes();
+            }
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,113 @@
+package com.pluralsight;
+
+import java.util.Arrays;
+
+/*
+ * The k best (score, id) pairs seen so far, in a bounded binary heap of primitives.
+ *
+ * Higher scores are better; on equal scores the lower id wins, so results are stable (rows in
+ * file order). The root of the heap is the worst pair kept, so a pair that does not beat it is
+ * turned away with one comparison and most offers on a long scan cost next to nothing.
+ *
+ * Not thread safe. Parallel passes give each task its own TopK and merge them at the end.
+ */
+public class TopK {
+    private final int capacity;
+    private final long[] scores;
+    private final int[] ids;
+    private int size;
+
+    public TopK(int capacity) {
+        this.capacity = Math.max(0, capacity);
+        this.scores = new long[this.capacity];
+        this.ids = new int[this.capacity];
+    }
+
+    //OFFER-Keeps the pair if it is among the k best so far.
+    public void offer(long score, int id) {
+        if (size < capacity) {
+            scores[size] = score;
+            ids[size] = id;
+            siftUp(size++);
+        } else if (capacity > 0 && better(score, id, scores[0], ids[0])) {
+            scores[0] = score;
+            ids[0] = id;
+            siftDown(0, size);
+        }
+    }
+
+    //MERGE-Offers every pair the other TopK kept.
+    public void addAll(TopK other) {
+        for (int i = 0; i < other.size; i++) {
+            offer(other.scores[i], other.ids[i]);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    //IDS-The ids kept, best first. The heap itself is left as it is.
+    public int[] ids() {
+        // Heap sort on a copy: each round moves the worst pair left to the end, leaving best first.
+        TopK sorted = new TopK(scores.clone(), ids.clone(), size);
+        for (int end = size - 1; end > 0; end--) {
+            sorted.swap(0, end);
+            sorted.siftDown(0, end);
+        }
+        return Arrays.copyOf(sorted.ids, size);
+    }
+
+    private TopK(long[] scores, int[] ids, int size) {
+        this.capacity = scores.length;
+        this.scores = scores;
+        this.ids = ids;
+        this.size = size;
+    }
+
+    /* ------------------------------------------------------------------
+       Heap, worst pair at the root
+       ------------------------------------------------------------------ */
+    private static boolean better(long score, int id, long otherScore, int otherId) {
+        return score > otherScore || (score == otherScore && id < otherId);
+    }
+
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!better(scores[parent], ids[parent], scores[index], ids[index])) {
+                return;
+            }
+            swap(index, parent);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int index, int end) {
+        while (true) {
+            int worst = index;
+            int left = 2 * index + 1;
+            int right = left + 1;
+            if (left < end && better(scores[worst], ids[worst], scores[left], ids[left])) {
+                worst = left;
+            }
+            if (right < end && better(scores[worst], ids[worst], scores[right], ids[right])) {
+                worst = right;
+            }
+            if (worst == index) {
+                return;
+            }
+            swap(index, worst);
+            index = worst;
+        }
+    }
+
+    private void swap(int a, int b) {
+        long score = scores[a];
+        scores[a] = scores[b];
+        scores[b] = score;
+        int id = ids[a];
+        ids[a] = ids[b];
+        ids[b] = id;
+    }
+}
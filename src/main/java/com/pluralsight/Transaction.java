@@ -8,14 +8,14 @@ public class Transaction {
     private LocalTime time;
     private String description;
     private String vendor;
-    private double amount;
+    private long amountCents;
 
-    Transaction(LocalDate date, LocalTime time, String description, String vendor, double amount){
+    Transaction(LocalDate date, LocalTime time, String description, String vendor, long amountCents){
         this.date = date;
         this.time = time;
         this.description = description;
         this.vendor = vendor;
-        this.amount = amount;
+        this.amountCents = amountCents;
     }
 
     public LocalDate getDate(){
@@ -34,12 +34,13 @@ public class Transaction {
         return vendor;
     }
 
-    public double getAmount(){
-        return amount;
+    // Amount in cents; payments are negative.
+    public long getAmountCents(){
+        return amountCents;
     }
 
     @Override
     public String toString() {
-        return "Transaction: " + getDate() + getTime() + getDescription()  + getVendor()  + getAmount();
+        return "Transaction: " + getDate() + getTime() + getDescription()  + getVendor()  + Money.format(getAmountCents());
     }
 }
\ No newline at end of file
@@ -0,0 +1,465 @@
+package com.pluralsight;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+
+/*
+ * Bulk loader for the pipe-delimited ledger file.
+ *
+ * The file is split into byte ranges that always end on a line boundary. Every range is
+ * memory-mapped and parsed on its own thread into a private columnar Ledger, then the
+ * per-range ledgers are appended to the target in file order. Parsing works directly on the
+ * mapped bytes, so no regex, no String.split and no per-field substrings are created; vendor
+ * and description bytes are interned per range, so a repeated value never becomes a String twice.
+ *
+ * Lines written by the Journal carry two extra fields, a sequence number and a CRC32; the
+ * checksum is verified and a line that fails it is reported like any other bad line.
+ * Lines starting with '#' (the footer of a partition file) are not rows and are skipped.
+ */
+public class TransactionLoader {
+
+    // Ranges smaller than this are not worth a thread of their own.
+    private static final long MIN_CHUNK_BYTES = 1L << 20;
+    // A single mapping can not be larger than Integer.MAX_VALUE, stay well below that.
+    private static final long MAX_CHUNK_BYTES = 1L << 30;
+    private static final int MAX_LINE_BYTES = 64 * 1024;
+
+    /* ------------------------------------------------------------------
+       Load result
+       ------------------------------------------------------------------ */
+    public static class Result {
+        private final int rowsLoaded;
+        private final List<String> errors;
+        private final long bytesRead;
+        private final long lastSequence;
+        private final long endOffset;
+        private final long linesRead;
+
+        Result(int rowsLoaded, List<String> errors, long bytesRead, long lastSequence, long endOffset, long linesRead) {
+            this.rowsLoaded = rowsLoaded;
+            this.errors = errors;
+            this.bytesRead = bytesRead;
+            this.lastSequence = lastSequence;
+            this.endOffset = endOffset;
+            this.linesRead = linesRead;
+        }
+
+        public int getRowsLoaded() {
+            return rowsLoaded;
+        }
+
+        // One entry per rejected line, already prefixed with its 1-based line number.
+        public List<String> getErrors() {
+            return errors;
+        }
+
+        public long getBytesRead() {
+            return bytesRead;
+        }
+
+        // Highest journal sequence number in the file, or 0 when it holds no journal records.
+        public long getLastSequence() {
+            return lastSequence;
+        }
+
+        // File offset just past the last byte parsed.
+        public long getEndOffset() {
+            return endOffset;
+        }
+
+        public long getLinesRead() {
+            return linesRead;
+        }
+    }
+
+    //LOAD-Parses the whole file into the ledger using one thread per available core.
+    public static Result load(Path path, Ledger target) throws IOException {
+        return load(path, target, Runtime.getRuntime().availableProcessors());
+    }
+
+    public static Result load(Path path, Ledger target, int threads) throws IOException {
+        return load(path, target, 0, 1, threads);
+    }
+
+    //LOAD FROM OFFSET-Parses only the bytes from fromOffset on; firstLine is the line number found at that offset.
+    public static Result load(Path path, Ledger target, long fromOffset, long firstLine, int threads) throws IOException {
+        return load(path, target, fromOffset, -1, firstLine, threads);
+    }
+
+    //LOAD RANGE-Parses the bytes from fromOffset up to toOffset (-1 for the end of the file), which should end on a line boundary.
+    public static Result load(Path path, Ledger target, long fromOffset, long toOffset, long firstLine, int threads) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = toOffset < 0 ? channel.size() : Math.min(toOffset, channel.size());
+            if (fromOffset > size) {
+                throw new IOException("Offset " + fromOffset + " is past the end of " + path);
+            }
+            long[] bounds = splitOnLines(channel, fromOffset, size, threads);
+            int chunkCount = bounds.length - 1;
+
+            List<Chunk> chunks = new ArrayList<>(chunkCount);
+            for (int i = 0; i < chunkCount; i++) {
+                long length = bounds[i + 1] - bounds[i];
+                chunks.add(new Chunk(channel.map(FileChannel.MapMode.READ_ONLY, bounds[i], length)));
+            }
+
+            if (chunkCount == 1) {
+                chunks.get(0).parse();
+            } else {
+                parseInParallel(chunks, Math.min(threads, chunkCount));
+            }
+
+            // Merge in file order and turn chunk-local line numbers into file line numbers.
+            int rowsBefore = target.size();
+            List<String> errors = new ArrayList<>();
+            long lineNumber = firstLine;
+            long lastSequence = 0;
+            for (Chunk chunk : chunks) {
+                target.appendAll(chunk.rows);
+                lastSequence = Math.max(lastSequence, chunk.lastSequence);
+                for (int i = 0; i < chunk.errorLines.size(); i++) {
+                    errors.add("line " + (lineNumber + chunk.errorLines.get(i)) + ": " + chunk.errorMessages.get(i));
+                }
+                lineNumber += chunk.lineCount;
+            }
+            return new Result(target.size() - rowsBefore, errors, size - fromOffset, lastSequence, size, lineNumber - firstLine);
+        }
+    }
+
+    private static void parseInParallel(List<Chunk> chunks, int threads) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "ledger-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<?>> futures = new ArrayList<>(chunks.size());
+            for (Chunk chunk : chunks) {
+                futures.add(pool.submit(chunk::parse));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Load interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Load failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    //SPLIT-Picks evenly spaced split points and moves each one forward to just past the next newline.
+    static long[] splitOnLines(FileChannel channel, long from, long size, int threads) throws IOException {
+        long length = size - from;
+        int wanted = (int) Math.max(1, Math.min(threads, length / MIN_CHUNK_BYTES));
+        wanted = (int) Math.max(wanted, (length + MAX_CHUNK_BYTES - 1) / MAX_CHUNK_BYTES);
+
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(from);
+        ByteBuffer probe = ByteBuffer.allocate(8192);
+        for (int i = 1; i < wanted; i++) {
+            long target = Math.max(from + length * i / wanted, bounds.get(bounds.size() - 1));
+            long split = nextLineStart(channel, target, size, probe);
+            if (split > bounds.get(bounds.size() - 1) && split < size) {
+                bounds.add(split);
+            }
+        }
+        bounds.add(size);
+
+        long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = bounds.get(i);
+        }
+        return result;
+    }
+
+    private static long nextLineStart(FileChannel channel, long from, long size, ByteBuffer probe) throws IOException {
+        long position = from;
+        while (position < size) {
+            probe.clear();
+            int read = channel.read(probe, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (probe.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    /* ------------------------------------------------------------------
+       Per-range parser
+       ------------------------------------------------------------------ */
+    private static class Chunk {
+        private final MappedByteBuffer buffer;
+        private final Ledger rows = new Ledger(false);
+        private final ByteInterner interner = new ByteInterner(rows.getStrings());
+        private final List<Long> errorLines = new ArrayList<>();
+        private final List<String> errorMessages = new ArrayList<>();
+        private long lineCount;
+        private long lastSequence;
+
+        // Field boundaries of the line being parsed: start/end offsets into the buffer.
+        private final int[] fieldStart = new int[7];
+        private final int[] fieldEnd = new int[7];
+        private final CRC32 crc = new CRC32();
+        private byte[] scratch = new byte[256];
+
+        Chunk(MappedByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        void parse() {
+            int limit = buffer.limit();
+            int lineStart = 0;
+            while (lineStart < limit) {
+                int lineEnd = lineStart;
+                while (lineEnd < limit && buffer.get(lineEnd) != '\n') {
+                    lineEnd++;
+                }
+                int contentEnd = lineEnd;
+                if (contentEnd > lineStart && buffer.get(contentEnd - 1) == '\r') {
+                    contentEnd--;
+                }
+                if (contentEnd > lineStart && buffer.get(lineStart) != '#') {
+                    parseLine(lineStart, contentEnd);
+                }
+                lineCount++;
+                lineStart = lineEnd + 1;
+            }
+        }
+
+        private void parseLine(int start, int end) {
+            if (end - start > MAX_LINE_BYTES) {
+                reject("line too long");
+                return;
+            }
+            int field = 0;
+            fieldStart[0] = start;
+            for (int i = start; i < end; i++) {
+                if (buffer.get(i) == '|') {
+                    if (field == 6) {
+                        reject("too many fields");
+                        return;
+                    }
+                    fieldEnd[field] = i;
+                    field++;
+                    fieldStart[field] = i + 1;
+                }
+            }
+            if (field != 4 && field != 6) {
+                reject("expected 5 fields but found " + (field + 1));
+                return;
+            }
+            fieldEnd[field] = end;
+
+            try {
+                if (field == 6) {
+                    verifyChecksum(start, fieldEnd[5], fieldStart[6], fieldEnd[6]);
+                    lastSequence = Math.max(lastSequence, parseLong(fieldStart[5], fieldEnd[5], 10));
+                }
+                int epochDay = parseDate(fieldStart[0], fieldEnd[0]);
+                int secondOfDay = parseTime(fieldStart[1], fieldEnd[1]);
+                long cents = Money.parseCents(buffer, fieldStart[4], fieldEnd[4]);
+                int description = interner.intern(buffer, fieldStart[2], fieldEnd[2]);
+                int vendor = interner.intern(buffer, fieldStart[3], fieldEnd[3]);
+                rows.append(epochDay, secondOfDay, description, vendor, cents);
+            } catch (IllegalArgumentException e) {
+                reject(e.getMessage());
+            }
+        }
+
+        // The CRC32 covers everything before the last '|', as written by the Journal.
+        private void verifyChecksum(int start, int bodyEnd, int crcStart, int crcEnd) {
+            int length = bodyEnd - start;
+            if (scratch.length < length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            buffer.get(start, scratch, 0, length);
+            crc.reset();
+            crc.update(scratch, 0, length);
+            if (crc.getValue() != parseLong(crcStart, crcEnd, 16)) {
+                throw new IllegalArgumentException("checksum mismatch");
+            }
+        }
+
+        private long parseLong(int start, int end, int radix) {
+            if (end <= start || end - start > 16) {
+                throw new IllegalArgumentException("invalid number");
+            }
+            long value = 0;
+            for (int i = start; i < end; i++) {
+                int digit = Character.digit(buffer.get(i), radix);
+                if (digit < 0) {
+                    throw new IllegalArgumentException("invalid number");
+                }
+                value = value * radix + digit;
+            }
+            return value;
+        }
+
+        private void reject(String message) {
+            errorLines.add(lineCount);
+            errorMessages.add(message);
+        }
+
+        // yyyy-MM-dd, returned as epoch day
+        private int parseDate(int start, int end) {
+            if (end - start != 10 || buffer.get(start + 4) != '-' || buffer.get(start + 7) != '-') {
+                throw new IllegalArgumentException("invalid date");
+            }
+            return epochDay(digits(start, 4), digits(start + 5, 2), digits(start + 8, 2));
+        }
+
+        // HH:mm:ss, or HH:mm as older ledger lines have it (like LocalTime.parse), returned as second of day
+        private int parseTime(int start, int end) {
+            int length = end - start;
+            if ((length != 8 && length != 5) || buffer.get(start + 2) != ':' || (length == 8 && buffer.get(start + 5) != ':')) {
+                throw new IllegalArgumentException("invalid time");
+            }
+            int hour = digits(start, 2);
+            int minute = digits(start + 3, 2);
+            int second = length == 8 ? digits(start + 6, 2) : 0;
+            if (hour > 23 || minute > 59 || second > 59) {
+                throw new IllegalArgumentException("invalid time");
+            }
+            return hour * 3600 + minute * 60 + second;
+        }
+
+        private int digits(int start, int count) {
+            int value = 0;
+            for (int i = start; i < start + count; i++) {
+                int digit = buffer.get(i) - '0';
+                if (digit < 0 || digit > 9) {
+                    throw new IllegalArgumentException("invalid digit");
+                }
+                value = value * 10 + digit;
+            }
+            return value;
+        }
+    }
+
+    //EPOCH DAY-Same result as LocalDate.of(year, month, day).toEpochDay() without creating the LocalDate.
+    static int epochDay(int year, int month, int day) {
+        if (month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)) {
+            throw new IllegalArgumentException("invalid date");
+        }
+        long y = year;
+        long total = 365 * y;
+        total += (y + 3) / 4 - (y + 99) / 100 + (y + 399) / 400;
+        total += (367 * month - 362) / 12;
+        total += day - 1;
+        if (month > 2) {
+            total--;
+            if (!isLeapYear(year)) {
+                total--;
+            }
+        }
+        // Days from 0000-01-01 to 1970-01-01.
+        return (int) (total - 719528);
+    }
+
+    private static boolean isLeapYear(int year) {
+        return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        return switch (month) {
+            case 2 -> isLeapYear(year) ? 29 : 28;
+            case 4, 6, 9, 11 -> 30;
+            default -> 31;
+        };
+    }
+
+    /* ------------------------------------------------------------------
+       Byte-level string interning
+       ------------------------------------------------------------------ */
+    // Open-addressing table from raw UTF-8 bytes to string table ids, so repeated vendors and
+    // descriptions are matched on their bytes and only decoded into a String once.
+    private static class ByteInterner {
+        private final StringTable table;
+        private byte[][] keys = new byte[256][];
+        private int[] ids = new int[256];
+        private int count;
+
+        ByteInterner(StringTable table) {
+            this.table = table;
+        }
+
+        int intern(ByteBuffer buffer, int start, int end) {
+            int length = end - start;
+            int hash = 1;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + buffer.get(i);
+            }
+            int mask = keys.length - 1;
+            int slot = (hash ^ (hash >>> 16)) & mask;
+            while (keys[slot] != null) {
+                if (matches(keys[slot], buffer, start, length)) {
+                    return ids[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            byte[] key = new byte[length];
+            buffer.get(start, key, 0, length);
+            int id = table.intern(new String(key, StandardCharsets.UTF_8));
+            keys[slot] = key;
+            ids[slot] = id;
+            if (++count * 2 > keys.length) {
+                grow();
+            }
+            return id;
+        }
+
+        private static boolean matches(byte[] key, ByteBuffer buffer, int start, int length) {
+            if (key.length != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (key[i] != buffer.get(start + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void grow() {
+            byte[][] oldKeys = keys;
+            int[] oldIds = ids;
+            keys = new byte[oldKeys.length * 2][];
+            ids = new int[oldKeys.length * 2];
+            int mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                byte[] key = oldKeys[i];
+                if (key == null) {
+                    continue;
+                }
+                int hash = Arrays.hashCode(key);
+                int slot = (hash ^ (hash >>> 16)) & mask;
+                while (keys[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+                ids[slot] = oldIds[i];
+            }
+        }
+    }
+}